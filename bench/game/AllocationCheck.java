@@ -0,0 +1,99 @@
+package game;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.SplittableRandom;
+
+/**
+ * AllocationCheck is a regression check that a headless
+ * <a href="#{@link}">{@link SugarDash}</a> allocates nothing once warmed up.
+ * It plays frames of tick and paint, counting the bytes the thread allocates
+ * in each, and exits with status 1 if any steady frame allocated at all.
+ * A simulated player jumps most obstacles, so runs last long enough for every
+ * obstacle pattern to turn up during the warm-up. A second game is checked
+ * the same way in practice mode, where every tick keeps a rewind state, with
+ * a slower player whose misses wind the run back every few hundred ticks.
+ * <p>
+ * Frames where the game ends are not steady (the results screen is built
+ * then) and neither are restarts, so those are left out of the count.
+ * Painting goes to a <a href="#{@link}">{@link DiscardGraphics}</a>; the
+ * bytes a real offscreen image costs are printed alongside for reference.
+ * </p>
+ * Run with <code>java -cp bin game.AllocationCheck [frames]</code>.
+ * @version %I% %G%
+ */
+final class AllocationCheck {
+
+    private static final int WARMUP_FRAMES = 50_000;
+    private static final Simulator.Policy PLAYER = Simulator.policy("reactive:30:0.15");
+    /** Reacts late more often, so practice runs are wound back every few hundred ticks */
+    private static final Simulator.Policy PRACTICE_PLAYER = Simulator.policy("reactive:30:0.05");
+    private static final SplittableRandom PLAYER_RANDOM = new SplittableRandom(1);
+
+    private AllocationCheck() {}
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+
+        SugarDash game = new SugarDash(800, 600);
+        Graphics discard = new DiscardGraphics();
+        BufferedImage canvas = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        Graphics raster = canvas.createGraphics();
+
+        play(game, PLAYER, discard, WARMUP_FRAMES);
+        play(game, PLAYER, raster, WARMUP_FRAMES / 10);
+
+        long[] steady = play(game, PLAYER, discard, frames);
+        long[] real = play(game, PLAYER, raster, frames / 10);
+        raster.dispose();
+
+        SugarDash practice = new SugarDash(800, 600);
+        practice.setPractice(true);
+        play(practice, PRACTICE_PLAYER, discard, WARMUP_FRAMES);
+        long[] rewinding = play(practice, PRACTICE_PLAYER, discard, frames);
+
+        System.out.printf("steady frames: %d, bytes allocated: %d (%.1f B/frame)%n",
+                          steady[1], steady[0], (double) steady[0] / steady[1]);
+        System.out.printf("with Java2D rasterising: %.1f B/frame%n", (double) real[0] / real[1]);
+        System.out.printf("practice mode: %d steady frames, bytes allocated: %d (%.1f B/frame)%n",
+                          rewinding[1], rewinding[0], (double) rewinding[0] / rewinding[1]);
+        if (steady[0] != 0) {
+            System.out.println("FAIL: the steady-state frame allocates");
+            System.exit(1);
+        }
+        if (rewinding[0] != 0) {
+            System.out.println("FAIL: the steady-state frame allocates in practice mode");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    /**
+     * Plays frames, restarting whenever the game ends.
+     * @return bytes allocated in steady frames, and how many steady frames there were
+     */
+    private static long[] play(SugarDash game, Simulator.Policy player, Graphics brush, int frames) {
+        long bytes = 0;
+        long steadyFrames = 0;
+        for (int i = 0; i < frames; i++) {
+            if (game.isGameOver() && i % 200 == 0) {
+                game.resetGame();
+                game.spawnPowerUp();
+            }
+            if (player.jump(game, PLAYER_RANDOM)) {
+                game.press(SugarDash.INPUT_JUMP);
+            }
+            boolean wasOver = game.isGameOver();
+            long before = Bench.allocatedBytes();
+            game.tick();
+            game.paint(brush);
+            long after = Bench.allocatedBytes();
+            if (game.isGameOver() == wasOver) {
+                bytes += after - before;
+                steadyFrames++;
+            }
+        }
+        return new long[] {bytes, steadyFrames};
+    }
+}
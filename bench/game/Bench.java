@@ -0,0 +1,95 @@
+package game;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Bench is a small benchmark harness for the game's hot paths. Each case is
+ * warmed up until the JIT has settled, then timed over several fixed-length
+ * iterations, reporting the mean nanoseconds and heap bytes allocated per
+ * operation on the calling thread.
+ * <p>
+ * Results from every case are summed into a sink that is printed at the end,
+ * so the JIT can't throw the measured work away as dead code.
+ * </p>
+ * @version %I% %G%
+ */
+final class Bench {
+
+    /** One operation of a benchmark. The returned value is sunk, never used. */
+    interface Op {
+        long run();
+    }
+
+    /** Length of each warm-up and measured iteration, in nanoseconds. */
+    private static final long ITERATION_NANOS = 500_000_000L;
+    private static final int WARMUP_ITERATIONS = 4;
+    private static final int MEASURED_ITERATIONS = 6;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static long sink;
+
+    private Bench() {}
+
+    /**
+     * Warms up and measures a single case, printing a line with its results.
+     * @param name the name printed alongside the results
+     * @param op the operation to measure
+     */
+    static void run(String name, Op op) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iterate(op);
+        }
+
+        double nanosPerOp = 0;
+        double bytesPerOp = 0;
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            double[] result = iterate(op);
+            nanosPerOp += result[0] / MEASURED_ITERATIONS;
+            bytesPerOp += result[1] / MEASURED_ITERATIONS;
+        }
+        System.out.printf("%-32s %12.1f ns/op %10.1f B/op%n", name, nanosPerOp, bytesPerOp);
+    }
+
+    /**
+     * Returns the bytes the calling thread has allocated since it started.
+     * @return allocated bytes, as counted by the JVM's thread allocation accounting
+     */
+    static long allocatedBytes() {
+        return THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /** Prints the sink, which keeps every result observable. */
+    static void finish() {
+        System.out.println("(sink " + sink + ")");
+    }
+
+    /**
+     * Runs the operation in batches until an iteration's worth of time passes.
+     * Batches start at one op and double while they take under a millisecond,
+     * so slow cases don't overshoot and fast ones don't drown in clock reads.
+     * @return nanoseconds per op and bytes per op, in that order
+     */
+    private static double[] iterate(Op op) {
+        long ops = 0;
+        int batch = 1;
+        long bytes = allocatedBytes();
+        long start = System.nanoTime();
+        long elapsed = 0;
+        while (elapsed < ITERATION_NANOS) {
+            long batchStart = System.nanoTime();
+            for (int i = 0; i < batch; i++) {
+                sink += op.run();
+            }
+            ops += batch;
+            long now = System.nanoTime();
+            if (now - batchStart < 1_000_000L && batch < (1 << 20)) {
+                batch <<= 1;
+            }
+            elapsed = now - start;
+        }
+        bytes = allocatedBytes() - bytes;
+        return new double[] {(double) elapsed / ops, (double) bytes / ops};
+    }
+}
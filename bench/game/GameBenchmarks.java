@@ -0,0 +1,177 @@
+package game;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * GameBenchmarks measures the geometry and render paths that run every
+ * frame: <a href="#{@link}">{@link Entities}</a> outline tests, still and
+ * turning, <a href="#{@link}">{@link SpatialGrid}</a> queries, entities
+ * updating, painting and colliding, a full match's
+ * <a href="#{@link}">{@link GhostSnapshots}</a> trading, and a
+ * full headless <a href="#{@link}">{@link SugarDash}</a> tick and paint, plus
+ * a tick alone with and without practice mode's rewind states.
+ * Painting goes to an offscreen image, so no display is needed.
+ * <p>
+ * Run with <code>java -cp bin game.GameBenchmarks [filter]</code>; only cases
+ * whose name contains the filter are run.
+ * </p>
+ * @version %I% %G%
+ */
+final class GameBenchmarks {
+
+    private GameBenchmarks() {}
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        String filter = args.length > 0 ? args[0] : "";
+
+        BufferedImage canvas = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        Graphics brush = canvas.createGraphics();
+
+        // A turned square, a cup it overlaps, and one far off
+        Point[] square = {new Point(0, 0), new Point(40, 0), new Point(40, 40), new Point(0, 40)};
+        Entities pair = new Entities(3);
+        int player = pair.add(100, 360);
+        pair.setShape(player, pair.addShape(new Entities.Shape(square)));
+        pair.place(player, 100, 360, 30);
+        int cupShape = pair.addShape(new Entities.Shape(ObstacleField.outline(50, 30, 50)));
+        int obstacle = pair.add(110, 350);
+        pair.setShape(obstacle, cupShape);
+        int far = pair.add(600, 350);
+        pair.setShape(far, cupShape);
+
+        Entities field = new Entities(100_000);
+        int starKind = field.addKind(SugarDash.starKind());
+        Random rand = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            int e = field.add(rand.nextInt(800), rand.nextInt(300));
+            field.setVelocity(e, -SugarDash.PROP_SPEED, 0);
+            field.setWrap(e, -80, 800);
+            field.setLook(e, starKind);
+        }
+
+        SpatialGrid grid = new SpatialGrid(800, 600, 100);
+        for (int i = 0; i < 1_000; i++) {
+            double x = rand.nextInt(800), y = rand.nextInt(550);
+            grid.place(i, x, y, x + 50, y + 50);
+        }
+
+        // A player among a thousand obstacles, which it looks for hits on
+        Entities crowd = new Entities(1_001, new SpatialGrid(800, 600, 100));
+        int cup = crowd.addShape(new Entities.Shape(ObstacleField.outline(50, 30, 50)));
+        for (int i = 0; i < 1_000; i++) {
+            int e = crowd.add(rand.nextInt(800), rand.nextInt(550));
+            crowd.setShape(e, cup);
+            crowd.setCollider(e, 2, 0);
+        }
+        int body = crowd.add(100, 360);
+        crowd.setShape(body, crowd.addShape(new Entities.Shape(square)));
+        crowd.place(body, 100, 360, 30);
+        crowd.setCollider(body, 1, 2);
+
+        SugarDash game = new SugarDash(800, 600);
+        game.spawnPowerUp();
+        // The same game twice, one keeping every tick's state to rewind to
+        SugarDash plain = new SugarDash(800, 600);
+        SugarDash practice = new SugarDash(800, 600);
+        practice.setPractice(true);
+        Simulator.Policy jumper = Simulator.policy("reactive:12");
+        SplittableRandom jumps = new SplittableRandom(1);
+
+        // A relay's end and a client's end of a full match, trading snapshots
+        GhostSnapshots relayEnd = new GhostSnapshots(GhostSnapshots.MAX_GHOSTS, 1);
+        GhostSnapshots clientEnd = new GhostSnapshots(1, GhostSnapshots.MAX_GHOSTS);
+        int[] match = new int[GhostSnapshots.MAX_GHOSTS * GhostSnapshots.FIELDS];
+        int[] self = new int[GhostSnapshots.FIELDS];
+        ByteBuffer packet = ByteBuffer.allocate(GhostSnapshots.MAX_PACKET);
+
+        if (matches("entities.touches.hit", filter)) {
+            Bench.run("entities.touches.hit", () -> pair.touches(player, obstacle) ? 1 : 0);
+        }
+        if (matches("entities.touches.miss", filter)) {
+            Bench.run("entities.touches.miss", () -> pair.touches(player, far) ? 1 : 0);
+        }
+        if (matches("entities.touches.turning", filter)) {
+            // A degree more each time, so the corners are worked out again, as mid-jump
+            Bench.run("entities.touches.turning", () -> {
+                pair.set(player, 100, 360, (pair.getRotation(player) + 1) % 360);
+                return pair.touches(player, obstacle) ? 1 : 0;
+            });
+        }
+        if (matches("spatialgrid.1k.query", filter)) {
+            Bench.run("spatialgrid.1k.query", () -> grid.query(100, 360, 140, 400, -1));
+        }
+        if (matches("entities.100k.tick", filter)) {
+            Bench.run("entities.100k.tick", () -> {
+                field.tick();
+                return field.size();
+            });
+        }
+        if (matches("entities.100k.paint", filter)) {
+            Bench.run("entities.100k.paint", () -> {
+                field.paint(brush, 0.5);
+                return 1;
+            });
+        }
+        if (matches("entities.1k.collide", filter)) {
+            Bench.run("entities.1k.collide", crowd::collide);
+        }
+        if (matches("ghosts.64.exchange", filter)) {
+            Bench.run("ghosts.64.exchange", () -> {
+                // Every ghost moves on and half of them change height, as mid-jump.
+                for (int g = 0; g < GhostSnapshots.MAX_GHOSTS; g++) {
+                    match[g * GhostSnapshots.FIELDS + GhostSnapshots.DISTANCE] += 24;
+                    match[g * GhostSnapshots.FIELDS + GhostSnapshots.Y] += g & 1;
+                }
+                packet.clear();
+                relayEnd.write(packet, match, -1L);
+                long size = packet.position();
+                packet.flip();
+                clientEnd.read(packet);
+                packet.clear();
+                clientEnd.write(packet, self, 1L);
+                packet.flip();
+                relayEnd.read(packet);
+                return size;
+            });
+        }
+        if (matches("sugardash.tick", filter)) {
+            Bench.run("sugardash.tick", () -> playTick(plain, jumper, jumps));
+            Bench.run("sugardash.tick.practice", () -> playTick(practice, jumper, jumps));
+        }
+        if (matches("sugardash.frame", filter)) {
+            Bench.run("sugardash.frame", () -> {
+                if (game.isGameOver()) {
+                    game.resetGame();
+                    game.spawnPowerUp();
+                }
+                game.tick();
+                game.paint(brush);
+                return 1;
+            });
+        }
+
+        brush.dispose();
+        Bench.finish();
+    }
+
+    /** Plays one tick with a simulated jumper, restarting if the run is over. */
+    private static long playTick(SugarDash game, Simulator.Policy jumper, SplittableRandom jumps) {
+        if (game.isGameOver()) {
+            game.resetGame();
+        }
+        if (jumper.jump(game, jumps)) {
+            game.press(SugarDash.INPUT_JUMP);
+        }
+        game.tick();
+        return game.getTicks();
+    }
+
+    private static boolean matches(String name, String filter) {
+        return name.contains(filter);
+    }
+}
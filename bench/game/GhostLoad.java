@@ -0,0 +1,144 @@
+package game;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.SplittableRandom;
+
+/**
+ * GhostLoad puts a <a href="#{@link}">{@link GhostRelay}</a> under the load of
+ * a full match over loopback. It starts a relay on its own thread and many
+ * headless <a href="#{@link}">{@link SugarDash}</a> clients, each racing the
+ * others through a <a href="#{@link}">{@link GhostLink}</a> and played by a
+ * simulated player, all ticked in real time. Runs that end start over after a
+ * second, so the match keeps a mix of running and finished ghosts.
+ * <p>
+ * At the end it prints each client's bandwidth each way, the relay's CPU time
+ * as a share of one core, and the clients' own CPU time per tick. Then it
+ * stops ticking, lets the snapshots settle, and checks that every client sees
+ * exactly the others' latest state; it exits with status 1 if any doesn't.
+ * </p>
+ * Run with <code>java -cp bin game.GhostLoad [clients] [seconds]</code>;
+ * there are 48 clients for 10 seconds by default. Clients past a full match
+ * of {@value GhostSnapshots#MAX_GHOSTS} start another.
+ * @version %I% %G%
+ */
+final class GhostLoad {
+
+    private static final Simulator.Policy PLAYER = Simulator.policy("reactive:30:0.5");
+
+    private GhostLoad() {}
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 48;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        GhostRelay relay = new GhostRelay(0);
+        Thread relayThread = new Thread(() -> {
+            try {
+                relay.serve();
+            } catch (IOException exc) {
+                exc.printStackTrace();
+            }
+        }, "ghost-relay");
+        relayThread.setDaemon(true);
+        relayThread.start();
+
+        SugarDash[] games = new SugarDash[clients];
+        GhostLink[] links = new GhostLink[clients];
+        SplittableRandom[] players = new SplittableRandom[clients];
+        int[] overFor = new int[clients];
+        for (int i = 0; i < clients; i++) {
+            games[i] = new SugarDash(800, 600);
+            links[i] = games[i].race(relay.getPort(), matchOf(i));
+            players[i] = new SplittableRandom(i);
+        }
+
+        int ticks = seconds * Game.TICKS_PER_SECOND;
+        FramePacer pacer = new FramePacer(Game.TICKS_PER_SECOND);
+        long relayBefore = threads.getThreadCpuTime(relayThread.getId());
+        long clientsBefore = threads.getCurrentThreadCpuTime();
+        long start = System.nanoTime();
+        for (int t = 0; t < ticks; t++) {
+            pacer.await();
+            for (int i = 0; i < clients; i++) {
+                SugarDash game = games[i];
+                if (game.isGameOver() && ++overFor[i] > Game.TICKS_PER_SECOND) {
+                    overFor[i] = 0;
+                    game.resetGame();
+                }
+                if (PLAYER.jump(game, players[i])) {
+                    game.press(SugarDash.INPUT_JUMP);
+                }
+                game.tick();
+            }
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        long relayCpu = threads.getThreadCpuTime(relayThread.getId()) - relayBefore;
+        long clientsCpu = threads.getCurrentThreadCpuTime() - clientsBefore;
+
+        long sent = 0, received = 0, packets = 0;
+        for (GhostLink link : links) {
+            sent += link.getBytesSent();
+            received += link.getBytesReceived();
+            packets += link.getPacketsReceived();
+        }
+        System.out.printf("%d clients, %d ticks in %.1f s (%d late), relay saw %d players, turned away %d%n",
+                          clients, ticks, elapsed, pacer.getLate(), relay.getPlaying(), relay.getTurnedAway());
+        System.out.printf("per client: up %.0f B/s, down %.0f B/s (%.1f B/packet, %.1f%% of answers arrived)%n",
+                          sent / elapsed / clients, received / elapsed / clients, (double) received / packets,
+                          100.0 * packets / ((double) ticks * clients));
+        System.out.printf("relay: %.1f%% of a core, %.2f us/packet%n",
+                          100.0 * relayCpu / (elapsed * 1e9), relayCpu / 1e3 / relay.getPacketsIn());
+        System.out.printf("clients: %.1f us/tick each, game included%n",
+                          clientsCpu / 1e3 / ((double) ticks * clients));
+
+        // Every ghost should settle on the latest state its player sent.
+        for (int round = 0; round < 3; round++) {
+            for (GhostLink link : links) {
+                link.receive();
+                link.send();
+            }
+            Thread.sleep(50);
+        }
+        long[] everyone = new long[matchOf(clients - 1) + 1];
+        int[] racers = new int[everyone.length];
+        long[] own = new long[clients];
+        for (int i = 0; i < clients; i++) {
+            for (int f = 0; f < GhostSnapshots.FIELDS; f++) {
+                own[i] = own[i] * 31 + links[i].self(f);
+            }
+            everyone[matchOf(i)] += own[i];
+            racers[matchOf(i)]++;
+        }
+        int wrong = 0;
+        for (int i = 0; i < clients; i++) {
+            links[i].receive();
+            GhostSnapshots seen = links[i].ghosts();
+            long sum = 0;
+            for (long left = seen.present(); left != 0; left &= left - 1) {
+                int g = Long.numberOfTrailingZeros(left);
+                long ghost = 0;
+                for (int f = 0; f < GhostSnapshots.FIELDS; f++) {
+                    ghost = ghost * 31 + seen.value(g, f);
+                }
+                sum += ghost;
+            }
+            if (Long.bitCount(seen.present()) != racers[matchOf(i)] - 1 || sum != everyone[matchOf(i)] - own[i]) {
+                wrong++;
+            }
+        }
+        System.out.println(wrong == 0 ? "OK: every client sees every ghost's latest state"
+                                      : "FAIL: " + wrong + " clients see stale or missing ghosts");
+        if (wrong != 0) {
+            System.exit(1);
+        }
+    }
+
+    /** Fills matches one at a time, so past a full match the clients start another. */
+    private static int matchOf(int client) {
+        return 1 + client / GhostSnapshots.MAX_GHOSTS;
+    }
+}
@@ -0,0 +1,153 @@
+package game;
+
+import java.util.SplittableRandom;
+
+/**
+ * RewindCheck is a regression check that winding a headless
+ * <a href="#{@link}">{@link SugarDash}</a> back through a
+ * <a href="#{@link}">{@link RewindBuffer}</a> puts it back exactly. It plays
+ * ticks, keeping each state in a buffer and a copy of its own, and every so
+ * often winds back a random number of ticks, some further than the buffer
+ * reaches, so the oldest state left after evictions is used. The state the
+ * buffer gives back must match the copy, the game must save the same state
+ * once it has loaded it, and playing the same inputs again from there must
+ * give the same states as the first time, tick by tick. It exits with status
+ * 1 on the first mismatch.
+ * <p>
+ * A simulated player jumps most obstacles, so runs last long enough for
+ * rewinds to reach back across chunks of the level, and the check fails if
+ * none did. A run that ends starts over with the next seed.
+ * </p>
+ * Run with <code>java -cp bin game.RewindCheck [ticks]</code>.
+ * @version %I% %G%
+ */
+final class RewindCheck {
+
+    private static final Simulator.Policy PLAYER = Simulator.policy("reactive:30:0.15");
+    private static final SplittableRandom RANDOM = new SplittableRandom(1);
+    /** One rewind in this many ticks, on average */
+    private static final int REWIND_EVERY = 100;
+    /** Ticks of states and inputs kept by the check itself; more than the buffer keeps */
+    private static final int HISTORY = 2048;
+
+    private static final long[][] states = new long[HISTORY][];
+    private static final boolean[] jumps = new boolean[HISTORY];
+    /** How far the obstacles had scrolled at each tick, which gives the chunk coming on */
+    private static final double[] scrolled = new double[HISTORY];
+    private static final StateVector state = new StateVector();
+    private static final StateVector restored = new StateVector();
+
+    private RewindCheck() {}
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+
+        SugarDash game = new SugarDash(800, 600);
+        RewindBuffer buffer = new RewindBuffer();
+        long seed = 1;
+        game.resetGame(seed);
+        keep(game, buffer, 0);
+
+        int rewinds = 0, toOldest = 0, acrossChunks = 0, deepest = 0;
+        long compared = 0;
+        for (int played = 0; played < ticks; played++) {
+            if (game.isGameOver()) {
+                game.resetGame(++seed);
+                buffer.clear();
+                keep(game, buffer, 0);
+            }
+            int now = (int) game.getTicks();
+            boolean jump = PLAYER.jump(game, RANDOM);
+            jumps[(now + 1) % HISTORY] = jump;
+            step(game, jump, now + 1);
+            keep(game, buffer, now + 1);
+            now++;
+            if (game.isGameOver() || RANDOM.nextInt(REWIND_EVERY) != 0) {
+                continue;
+            }
+
+            int kept = buffer.size();
+            int back = RANDOM.nextInt(kept + kept / 8);
+            int target = now - Math.min(back, kept - 1);
+            if (!buffer.restore(back, restored)) {
+                fail("nothing to rewind to at tick " + now);
+            }
+            if (!matches(restored, target)) {
+                fail("the buffer gave back a different state for tick " + target + ", " + (now - target) + " back");
+            }
+            game.load(restored);
+            state.clear();
+            game.save(state);
+            if (!matches(state, target)) {
+                fail("the game saved a different state after loading tick " + target);
+            }
+            for (int t = target + 1; t <= now; t++) {
+                step(game, jumps[t % HISTORY], t);
+                state.clear();
+                game.save(state);
+                if (!matches(state, t)) {
+                    fail("replaying from tick " + target + " went a different way at tick " + t);
+                }
+                buffer.record(state);
+                compared++;
+            }
+
+            rewinds++;
+            deepest = Math.max(deepest, now - target);
+            if (back >= kept) toOldest++;
+            if (chunk(target) != chunk(now)) acrossChunks++;
+        }
+
+        System.out.printf("rewinds: %d, deepest %d ticks, %d to the oldest state kept, %d across chunks%n",
+                          rewinds, deepest, toOldest, acrossChunks);
+        System.out.printf("states replayed and compared: %d%n", compared);
+        if (acrossChunks == 0) {
+            fail("no rewind reached back into an earlier chunk");
+        }
+        System.out.println("OK");
+    }
+
+    /** Plays one tick, jumping first if told to, and works out how far the obstacles have come. */
+    private static void step(SugarDash game, boolean jump, int tick) {
+        if (jump) {
+            game.press(SugarDash.INPUT_JUMP);
+        }
+        game.tick();
+        scrolled[tick % HISTORY] = scrolled[(tick - 1) % HISTORY] + Difficulty.DEFAULT.speed(tick - 1);
+    }
+
+    /** Saves the game's state after a tick into the buffer and the check's own copy. */
+    private static void keep(SugarDash game, RewindBuffer buffer, int tick) {
+        state.clear();
+        game.save(state);
+        buffer.record(state);
+        long[] copy = new long[state.size()];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = state.get(i);
+        }
+        states[tick % HISTORY] = copy;
+        if (tick == 0) {
+            scrolled[0] = 0;
+        }
+    }
+
+    private static boolean matches(StateVector vector, int tick) {
+        long[] expected = states[tick % HISTORY];
+        if (vector.size() != expected.length) return false;
+        for (int i = 0; i < expected.length; i++) {
+            if (vector.get(i) != expected[i]) return false;
+        }
+        return true;
+    }
+
+    /** Returns which chunk of the level is coming on at a tick, going by where the right edge is. */
+    private static int chunk(int tick) {
+        return (int) ((scrolled[tick % HISTORY] + LevelGenerator.SPAWN_X) / LevelGenerator.CHUNK_WIDTH);
+    }
+
+    private static void fail(String why) {
+        System.out.println("FAIL: " + why);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,197 @@
+package game;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.SplittableRandom;
+
+/**
+ * ServerLoad puts a <a href="#{@link}">{@link GameServer}</a> under load over
+ * loopback. It starts a server on its own thread and connects many clients,
+ * which jump at random, ask for their status every tick, and start a new run
+ * once theirs is over. Every tenth client reads slowly, through a small
+ * receive buffer, while asking for its status many times a tick, so the
+ * server's writes to it fill up and status lines have to be missed.
+ * <p>
+ * Every line a client gets must be a whole <code>ticks score running|over</code>
+ * line, and its ticks must not go back except after a run is over. At the end
+ * it prints how many lines were asked for and how many came, and exits with
+ * status 1 if any line was garbled, any client got none, or any connection
+ * was dropped.
+ * </p>
+ * Run with <code>java -cp bin game.ServerLoad [clients] [seconds]</code>;
+ * there are 200 clients for 10 seconds by default.
+ * @version %I% %G%
+ */
+final class ServerLoad {
+
+    /** Status requests a slow client sends each tick */
+    private static final int SLOW_ASKS = 64;
+    /** How often a slow client reads, in ticks */
+    private static final int SLOW_READ_EVERY = Game.TICKS_PER_SECOND;
+
+    private ServerLoad() {}
+
+    /** Client is one connection and what it has made of the lines it got. */
+    private static final class Client {
+        final SocketChannel channel;
+        final boolean slow;
+        final StringBuilder partial = new StringBuilder();
+        final SplittableRandom random;
+        long asked, lines, lastTicks = -1;
+        /** Whether the last line said the run was over, and whether to start another */
+        boolean lastWasOver, over, closed;
+
+        Client(SocketChannel channel, boolean slow, long seed) {
+            this.channel = channel;
+            this.slow = slow;
+            random = new SplittableRandom(seed);
+        }
+    }
+
+    private static final ByteBuffer incoming = ByteBuffer.allocate(1 << 16);
+    private static int garbled;
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        GameServer server = new GameServer(0);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException exc) {
+                exc.printStackTrace();
+            }
+        }, "game-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        Client[] clients = new Client[count];
+        for (int i = 0; i < count; i++) {
+            SocketChannel channel = SocketChannel.open();
+            boolean slow = i % 10 == 9;
+            if (slow) {
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, 1024);
+            }
+            channel.connect(new InetSocketAddress("127.0.0.1", server.getPort()));
+            channel.configureBlocking(false);
+            clients[i] = new Client(channel, slow, i);
+        }
+
+        ByteBuffer commands = ByteBuffer.allocate(SLOW_ASKS + 2);
+        int ticks = seconds * Game.TICKS_PER_SECOND;
+        FramePacer pacer = new FramePacer(Game.TICKS_PER_SECOND);
+        for (int t = 0; t < ticks; t++) {
+            pacer.await();
+            for (Client client : clients) {
+                commands.clear();
+                if (client.over) {
+                    commands.put((byte) 'r');
+                    client.over = false;
+                } else if (client.random.nextInt(20) == 0) {
+                    commands.put((byte) 'j');
+                }
+                int asks = client.slow ? SLOW_ASKS : 1;
+                for (int a = 0; a < asks; a++) {
+                    commands.put((byte) 's');
+                }
+                commands.flip();
+                client.asked += asks;
+                client.channel.write(commands);
+                if (!client.slow || t % SLOW_READ_EVERY == 0) {
+                    read(client);
+                }
+            }
+        }
+
+        // Let whatever is still on its way arrive.
+        for (int round = 0; round < 10; round++) {
+            Thread.sleep(50);
+            for (Client client : clients) {
+                read(client);
+            }
+        }
+
+        long asked = 0, lines = 0, slowAsked = 0, slowLines = 0;
+        int silent = 0, closed = 0;
+        for (Client client : clients) {
+            asked += client.asked;
+            lines += client.lines;
+            if (client.slow) {
+                slowAsked += client.asked;
+                slowLines += client.lines;
+            }
+            if (client.lines == 0) silent++;
+            if (client.closed) closed++;
+        }
+        System.out.printf("%d clients, %d ticks (%d late), %d sessions left on the server%n",
+                          count, ticks, pacer.getLate(), server.getSessions());
+        // Lines telling of a run's end come unasked, so a client that misses none gets more than it asked.
+        System.out.printf("status lines: %d asked, %d came (%.1f%%); slow readers %d asked, %d came (%.1f%%)%n",
+                          asked, lines, 100.0 * lines / asked,
+                          slowAsked, slowLines, 100.0 * slowLines / Math.max(slowAsked, 1));
+        if (garbled == 0 && silent == 0 && closed == 0) {
+            System.out.println("OK: every status line came whole");
+        } else {
+            System.out.println("FAIL: " + garbled + " garbled lines, " + silent + " clients heard nothing, "
+                               + closed + " connections dropped");
+            System.exit(1);
+        }
+    }
+
+    /** Reads whatever has come for a client and checks each whole line. */
+    private static void read(Client client) throws IOException {
+        while (!client.closed) {
+            incoming.clear();
+            int read = client.channel.read(incoming);
+            if (read < 0) {
+                client.closed = true;
+            }
+            if (read <= 0) {
+                return;
+            }
+            incoming.flip();
+            while (incoming.hasRemaining()) {
+                char c = (char) incoming.get();
+                if (c != '\n') {
+                    client.partial.append(c);
+                    continue;
+                }
+                check(client, client.partial.toString());
+                client.partial.setLength(0);
+            }
+        }
+    }
+
+    /** Checks one status line and notes whether the run is over. */
+    private static void check(Client client, String line) {
+        client.lines++;
+        String[] fields = line.split(" ");
+        long ticks;
+        try {
+            if (fields.length != 3 || !(fields[2].equals("running") || fields[2].equals("over"))) {
+                throw new NumberFormatException();
+            }
+            ticks = Long.parseLong(fields[0]);
+            Integer.parseInt(fields[1]);
+        } catch (NumberFormatException exc) {
+            if (garbled++ < 5) {
+                System.out.println("garbled line: \"" + line + "\"");
+            }
+            return;
+        }
+        // Only a new run, started once the last was over, goes back to fewer ticks.
+        if (ticks < client.lastTicks && !client.lastWasOver && garbled++ < 5) {
+            System.out.println("ticks went back from " + client.lastTicks + " to " + ticks);
+        }
+        client.lastTicks = ticks;
+        client.lastWasOver = fields[2].equals("over");
+        if (client.lastWasOver) {
+            client.over = true;
+        }
+    }
+}
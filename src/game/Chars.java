@@ -0,0 +1,65 @@
+package game;
+
+/**
+ * Chars has helpers for writing text into a reused <code>char[]</code>, so
+ * on-screen text that changes every frame (the HUD, the profiler overlay)
+ * can be drawn with <code>drawChars</code> without making new Strings.
+ * @version %I% %G%
+ */
+final class Chars {
+
+    private Chars() {}
+
+    /**
+     * Copies <code>text</code> into <code>into</code>.
+     * @param text the characters to copy
+     * @param into where they are copied to
+     * @param at the index in <code>into</code> to start at
+     * @return the index just past the last character copied
+     */
+    static int putText(String text, char[] into, int at) {
+        text.getChars(0, text.length(), into, at);
+        return at + text.length();
+    }
+
+    /**
+     * Writes a non-negative number in decimal into <code>into</code>, padded with
+     * leading zeros to at least <code>minDigits</code> digits.
+     * @param value the number to write
+     * @param minDigits the fewest digits to write
+     * @param into where the digits are written
+     * @param at the index in <code>into</code> to start at
+     * @return the index just past the last digit written
+     */
+    static int putDigits(long value, int minDigits, char[] into, int at) {
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+        for (int i = at + digits - 1; i >= at; i--) {
+            into[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return at + digits;
+    }
+
+    /**
+     * Writes a non-negative number right-aligned in a field of spaces.
+     * @param value the number to write
+     * @param width the width of the field; wider numbers overflow it
+     * @param into where the field is written
+     * @param at the index in <code>into</code> to start at
+     * @return the index just past the field
+     */
+    static int putPadded(long value, int width, char[] into, int at) {
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        while (digits < width--) {
+            into[at++] = ' ';
+        }
+        return putDigits(value, 1, into, at);
+    }
+}
@@ -0,0 +1,53 @@
+package game;
+
+/**
+ * Difficulty is a set of the numbers that decide how hard SugarDash is: how
+ * fast obstacles start, how quickly they speed up, the speed they top out at,
+ * and how likely a power-up is after each obstacle cleared. Obstacles move
+ * <code>baseSpeed + min(moves, maxMoveSpeed) / speedDivisor</code> pixels a
+ * tick, where <code>moves</code> counts the ticks of the run so far.
+ * {@link #DEFAULT} is the tuning the game ships with.
+ * @version %I% %G%
+ */
+final class Difficulty {
+
+    /** The tick count past which obstacles stop speeding up, in the game's own tuning. */
+    static final int MAX_MOVE_SPEED = 3500;
+
+    /** The game's own tuning. */
+    static final Difficulty DEFAULT = new Difficulty(3.0, 500.0, MAX_MOVE_SPEED, 0.1);
+
+    final double baseSpeed;
+    final double speedDivisor;
+    final int maxMoveSpeed;
+    final double powerUpChance;
+
+    /**
+     * Creates a difficulty.
+     * @param baseSpeed obstacle speed at the start of a run, in pixels per tick
+     * @param speedDivisor ticks it takes to add one pixel per tick of speed
+     * @param maxMoveSpeed the tick count past which obstacles stop speeding up
+     * @param powerUpChance chance of a power-up after each obstacle cleared, 0 to 1
+     */
+    Difficulty(double baseSpeed, double speedDivisor, int maxMoveSpeed, double powerUpChance) {
+        this.baseSpeed = baseSpeed;
+        this.speedDivisor = speedDivisor;
+        this.maxMoveSpeed = maxMoveSpeed;
+        this.powerUpChance = powerUpChance;
+    }
+
+    /**
+     * Returns how fast obstacles move after a number of ticks.
+     * @param moves ticks into the run
+     * @return the speed, in pixels per tick
+     */
+    double speed(int moves) {
+        return baseSpeed + Math.min(moves, maxMoveSpeed) / speedDivisor;
+    }
+
+    @Override
+    public String toString() {
+        return "base=" + baseSpeed + " divisor=" + speedDivisor
+             + " cap=" + maxMoveSpeed + " chance=" + powerUpChance;
+    }
+}
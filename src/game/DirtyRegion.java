@@ -0,0 +1,182 @@
+package game;
+
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.geom.Path2D;
+
+/**
+ * DirtyRegion is the part of the canvas that has to be drawn again, kept as
+ * a few rectangles. Rectangles that overlap are merged as they are added, and
+ * once there are {@value #MAX_RECTS} the new one is merged into whichever
+ * grows the least, so the count stays small however many things move. When
+ * the rectangles cover most of the canvas it is simpler to draw it all, and
+ * the region just becomes the whole canvas.
+ * @version %I% %G%
+ */
+class DirtyRegion {
+
+    static final int MAX_RECTS = 32;
+    /** Past this share of the canvas, the whole canvas is drawn instead. */
+    private static final double FULL_SHARE = 0.6;
+
+    private final int width, height;
+    private final int[] left = new int[MAX_RECTS], top = new int[MAX_RECTS],
+                        right = new int[MAX_RECTS], bottom = new int[MAX_RECTS];
+    private int count;
+    private boolean full;
+    /** All the rectangles as one outline, to clip to them at once */
+    private final Path2D.Float outline = new Path2D.Float(Path2D.WIND_NON_ZERO, MAX_RECTS * 5);
+
+    /**
+     * Creates an empty region on a canvas.
+     * @param width the canvas width, in pixels
+     * @param height the canvas height, in pixels
+     */
+    DirtyRegion(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /** Empties the region. */
+    void clear() {
+        count = 0;
+        full = false;
+    }
+
+    /** Makes the region the whole canvas. */
+    void addFull() {
+        full = true;
+        count = 1;
+        left[0] = 0;
+        top[0] = 0;
+        right[0] = width;
+        bottom[0] = height;
+    }
+
+    /**
+     * Adds a rectangle, clipped to the canvas.
+     * @param x the left edge, in pixels
+     * @param y the top edge, in pixels
+     * @param w the width, in pixels
+     * @param h the height, in pixels
+     */
+    void add(int x, int y, int w, int h) {
+        if (full) return;
+        int x1 = Math.max(0, x), y1 = Math.max(0, y);
+        int x2 = Math.min(width, x + w), y2 = Math.min(height, y + h);
+        if (x1 >= x2 || y1 >= y2) return;
+
+        int merge = -1;
+        for (int i = 0; i < count; i++) {
+            if (x1 <= right[i] && left[i] <= x2 && y1 <= bottom[i] && top[i] <= y2) {
+                merge = i;
+                break;
+            }
+        }
+        if (merge < 0 && count < MAX_RECTS) {
+            left[count] = x1;
+            top[count] = y1;
+            right[count] = x2;
+            bottom[count] = y2;
+            count++;
+        } else {
+            if (merge < 0) {
+                long leastGrowth = Long.MAX_VALUE;
+                for (int i = 0; i < count; i++) {
+                    long growth = area(Math.min(x1, left[i]), Math.min(y1, top[i]),
+                                       Math.max(x2, right[i]), Math.max(y2, bottom[i]))
+                                - area(left[i], top[i], right[i], bottom[i]);
+                    if (growth < leastGrowth) {
+                        leastGrowth = growth;
+                        merge = i;
+                    }
+                }
+            }
+            left[merge] = Math.min(x1, left[merge]);
+            top[merge] = Math.min(y1, top[merge]);
+            right[merge] = Math.max(x2, right[merge]);
+            bottom[merge] = Math.max(y2, bottom[merge]);
+        }
+
+        long covered = 0;
+        for (int i = 0; i < count; i++) {
+            covered += area(left[i], top[i], right[i], bottom[i]);
+        }
+        if (covered > FULL_SHARE * width * height) {
+            addFull();
+        }
+    }
+
+    /**
+     * Adds every rectangle of another region.
+     * @param other the region to add
+     */
+    void addAll(DirtyRegion other) {
+        if (other.full) {
+            addFull();
+            return;
+        }
+        for (int i = 0; i < other.count; i++) {
+            add(other.left[i], other.top[i], other.right[i] - other.left[i], other.bottom[i] - other.top[i]);
+        }
+    }
+
+    /** Returns whether the region is the whole canvas.
+     * @return true if everything has to be drawn
+     */
+    boolean isFull() {
+        return full;
+    }
+
+    /** Returns how many rectangles the region is made of.
+     * @return the number of rectangles
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Limits drawing to one of the rectangles.
+     * @param brush the brush to clip
+     * @param i which rectangle
+     */
+    void clip(Graphics brush, int i) {
+        brush.setClip(left[i], top[i], right[i] - left[i], bottom[i] - top[i]);
+    }
+
+    /**
+     * Limits drawing to all the rectangles at once, so a frame can be painted
+     * in one go however many there are.
+     * @param brush the brush to clip
+     */
+    void clipAll(Graphics brush) {
+        if (count == 1) {
+            clip(brush, 0);
+            return;
+        }
+        outline.reset();
+        for (int i = 0; i < count; i++) {
+            outline.moveTo(left[i], top[i]);
+            outline.lineTo(right[i], top[i]);
+            outline.lineTo(right[i], bottom[i]);
+            outline.lineTo(left[i], bottom[i]);
+            outline.closePath();
+        }
+        brush.setClip(outline);
+    }
+
+    /**
+     * Copies one of the rectangles from an image to the same place on a canvas.
+     * @param brush the brush drawing on the canvas
+     * @param image the image to copy from
+     * @param i which rectangle
+     */
+    void copy(Graphics brush, Image image, int i) {
+        brush.drawImage(image, left[i], top[i], right[i], bottom[i],
+                        left[i], top[i], right[i], bottom[i], null);
+    }
+
+    private static long area(int x1, int y1, int x2, int y2) {
+        return (long) (x2 - x1) * (y2 - y1);
+    }
+}
@@ -0,0 +1,904 @@
+package game;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Entities holds the game's objects as rows of plain arrays, one array per
+ * component, instead of one object apiece. An entity is just an index; which
+ * components it has is a bit mask. A new sort of entity is a new mix of
+ * components, a new {@link Kind} or a new {@link Shape}, not a new subclass:
+ * <ul>
+ * <li>{@link #TRANSFORM}: where it is and how far it is turned, and both at the last tick.</li>
+ * <li>{@link #VELOCITY}: how far it moves and turns each tick.</li>
+ * <li>{@link #WRAP}: once it is left of a line, it jumps back to the right.</li>
+ * <li>{@link #LOOK}: its kind, and how far through the kind's animation it is.</li>
+ * <li>{@link #SHAPE}: its outline, turned and moved to where it is.</li>
+ * <li>{@link #STYLE}: the color its outline is filled with when drawn.</li>
+ * <li>{@link #COLLIDER}: which layers it is on, and which layers it looks for hits on.</li>
+ * </ul>
+ * <p>
+ * Each tick, {@link #tick()} runs the systems in a fixed order: movement,
+ * then wrapping, then animation. Then, once the game has moved whatever it
+ * steers itself, {@link #collide()} files every collider in a
+ * <a href="#{@link}">{@link SpatialGrid}</a> and tests each one that looks
+ * for hits against the colliders sharing its cells, outline against outline.
+ * Each system is one pass down the arrays it needs, skipping entities
+ * without the component, so they stay cheap with many thousands of entities;
+ * the collision passes go straight to the colliders, which are kept as a set
+ * of bits, since there are usually few of them.
+ * Drawing, and collecting what was drawn for the dirty-rectangle mode, are
+ * passes of their own, in the order the entities were added. Nothing is
+ * allocated after the entities are set up, except each kind's and shape's
+ * sprites the first time they are drawn.
+ * </p>
+ * @version %I% %G%
+ */
+class Entities {
+
+    static final int TRANSFORM = 1;
+    static final int VELOCITY = 2;
+    static final int WRAP = 4;
+    static final int LOOK = 8;
+    static final int SHAPE = 16;
+    static final int STYLE = 32;
+    static final int COLLIDER = 64;
+
+    /**
+     * Kind is what a sort of entity looks like: a picture, or several frames
+     * of one it steps through, each drawn once into a sprite and copied from
+     * then on.
+     */
+    static final class Kind {
+        private final int width, height;
+        private final List<Consumer<Graphics>> painters;
+        private final SpriteCache.Sprite[] frames;
+        private final int ticksPerFrame, loopFrame;
+
+        /**
+         * Creates a kind with one picture.
+         * @param width the picture's width, in pixels from the entity's position
+         * @param height the picture's height, in pixels from the entity's position
+         * @param painter draws the picture, with the entity's position at (0, 0)
+         */
+        Kind(int width, int height, Consumer<Graphics> painter) {
+            this(width, height, 1, 0, List.of(painter));
+        }
+
+        /**
+         * Creates an animated kind. It shows each frame for a number of ticks,
+         * plays them all once, then loops from one of them.
+         * @param width the pictures' width, in pixels from the entity's position
+         * @param height the pictures' height, in pixels from the entity's position
+         * @param ticksPerFrame how many ticks each frame is shown for
+         * @param loopFrame the frame to go back to after the last
+         * @param painters draw each frame, with the entity's position at (0, 0)
+         */
+        Kind(int width, int height, int ticksPerFrame, int loopFrame, List<Consumer<Graphics>> painters) {
+            this.width = width;
+            this.height = height;
+            this.ticksPerFrame = ticksPerFrame;
+            this.loopFrame = loopFrame;
+            this.painters = painters;
+            frames = new SpriteCache.Sprite[painters.size()];
+        }
+
+        /** Returns the sprite for a frame, drawing it the first time. */
+        private SpriteCache.Sprite frame(int frame) {
+            SpriteCache.Sprite sprite = frames[frame];
+            if (sprite == null) {
+                sprite = frames[frame] = SpriteCache.render(0, 0, width, height, painters.get(frame));
+            }
+            return sprite;
+        }
+    }
+
+    /**
+     * Shape is an outline entities can share. It is given as corners in any
+     * position, and kept with its top-left at (0, 0); an entity's position is
+     * where that corner goes, and it turns about the outline's centroid.
+     * Filled pictures of the outline are kept per color and whole degree of
+     * turn, for every entity with the shape, in any set of entities.
+     */
+    static final class Shape {
+        private final double[] xs, ys;
+        private final double centerX, centerY;
+        /** Convex outlines get the fast collision test */
+        private final boolean convex;
+        private final SpriteCache sprites = new SpriteCache();
+
+        /**
+         * Creates a shape.
+         * @param outline the corners, in order around the outline
+         */
+        Shape(Point... outline) {
+            double minX = outline[0].x, minY = outline[0].y;
+            for (Point p : outline) {
+                minX = Math.min(minX, p.x);
+                minY = Math.min(minY, p.y);
+            }
+            int n = outline.length;
+            xs = new double[n];
+            ys = new double[n];
+            for (int i = 0; i < n; i++) {
+                xs[i] = outline[i].x - minX;
+                ys[i] = outline[i].y - minY;
+            }
+
+            double area = 0, sumX = 0, sumY = 0;
+            int turns = 0;
+            for (int i = 0, j = 1; i < n; i++, j = (j + 1) % n) {
+                double cross = xs[i] * ys[j] - xs[j] * ys[i];
+                area += cross;
+                sumX += (xs[i] + xs[j]) * cross;
+                sumY += (ys[i] + ys[j]) * cross;
+                double turn = side(xs[i], ys[i], xs[j], ys[j], xs[(i + 2) % n], ys[(i + 2) % n]);
+                if (turn > 0) turns |= 1;
+                if (turn < 0) turns |= 2;
+            }
+            area = Math.abs(area / 2);
+            centerX = Math.abs(sumX / (6 * area));
+            centerY = Math.abs(sumY / (6 * area));
+            convex = turns != 3;
+        }
+
+        /** Returns the picture of the outline turned <code>step</code> degrees, drawing it the first time. */
+        private SpriteCache.Sprite sprite(Color color, int step) {
+            long key = SpriteCache.key(color, step);
+            SpriteCache.Sprite sprite = sprites.get(key);
+            if (sprite == null) {
+                double radians = Math.toRadians(step), cos = Math.cos(radians), sin = Math.sin(radians);
+                int n = xs.length;
+                int[] pictureXs = new int[n], pictureYs = new int[n];
+                double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+                double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < n; i++) {
+                    double dx = xs[i] - centerX, dy = ys[i] - centerY;
+                    double px = dx * cos - dy * sin + centerX, py = dx * sin + dy * cos + centerY;
+                    pictureXs[i] = (int) Math.floor(px);
+                    pictureYs[i] = (int) Math.floor(py);
+                    minX = Math.min(minX, px);
+                    maxX = Math.max(maxX, px);
+                    minY = Math.min(minY, py);
+                    maxY = Math.max(maxY, py);
+                }
+                sprite = sprites.put(key, SpriteCache.render(minX, minY, maxX, maxY, picture -> {
+                    picture.setColor(color);
+                    picture.fillPolygon(pictureXs, pictureYs, n);
+                }));
+            }
+            return sprite;
+        }
+    }
+
+    private final int[] components;
+    /** Transform, with turns in degrees */
+    private final double[] x, y, rotation, previousX, previousY, previousRotation;
+    /** Velocity, in pixels and degrees a tick */
+    private final double[] velocityX, velocityY, spin;
+    /**
+     * Whether anything has been given a spin, or turned within a tick, since
+     * the set was cleared; until then the turning pass is skipped
+     */
+    private boolean turning;
+    /** Wrap: the x-value an entity must go left of, and where it reappears */
+    private final double[] wrapBelow, wrapTo;
+    /** Look: the index of the kind, and ticks into its animation */
+    private final int[] kind, age;
+    /** Shape: the index of the shape, and where its placed corners start */
+    private final int[] shape, cornerStart;
+    /** Style: the fill color */
+    private final Color[] color;
+    /** Collider: the layers an entity is on, and the layers it looks for hits on */
+    private final int[] layer, mask;
+    /** A bit per entity, set for each collider, so the collision passes skip the rest in a word */
+    private final long[] colliders;
+
+    /**
+     * Every shaped entity's corners, one after another: turned about its
+     * centroid, from its position, and where it was last placed
+     */
+    private double[] turnedX = new double[64], turnedY = new double[64];
+    private double[] cornerX = new double[64], cornerY = new double[64];
+    private int cornersUsed;
+    /** The rotation each shaped entity's corners were last turned to, and the box around them */
+    private final double[] turnedRotation, turnedMinX, turnedMinY, turnedMaxX, turnedMaxY;
+    /** The pose each shaped entity's corners were last placed at */
+    private final double[] placedX, placedY, placedRotation;
+    /** Each shaped entity's bounding box where it is now */
+    private final double[] minX, minY, maxX, maxY;
+
+    /** Where colliders are filed, or null if there can be none */
+    private final SpatialGrid grid;
+    /** The hits the last collide found: who looked, and what they hit */
+    private int[] hitSource = new int[16], hitTarget = new int[16];
+    private int hitCount;
+
+    private Kind[] kinds = new Kind[4];
+    /** For each kind, the age its animation ends at and the age it loops back to */
+    private int[] kindEnd = new int[4], kindLoop = new int[4];
+    private int kindCount;
+    private Shape[] shapes = new Shape[4];
+    private int shapeCount;
+    private int count;
+
+    /**
+     * Creates an empty set with room for <code>capacity</code> entities, none
+     * of which can be colliders.
+     * @param capacity the most entities there will ever be at once
+     */
+    Entities(int capacity) {
+        this(capacity, null);
+    }
+
+    /**
+     * Creates an empty set with room for <code>capacity</code> entities,
+     * filing colliders in a grid.
+     * @param capacity the most entities there will ever be at once
+     * @param grid where colliders are filed; entities are filed under their index
+     */
+    Entities(int capacity, SpatialGrid grid) {
+        this.grid = grid;
+        components = new int[capacity];
+        x = new double[capacity];
+        y = new double[capacity];
+        rotation = new double[capacity];
+        previousX = new double[capacity];
+        previousY = new double[capacity];
+        previousRotation = new double[capacity];
+        velocityX = new double[capacity];
+        velocityY = new double[capacity];
+        spin = new double[capacity];
+        wrapBelow = new double[capacity];
+        wrapTo = new double[capacity];
+        kind = new int[capacity];
+        age = new int[capacity];
+        shape = new int[capacity];
+        cornerStart = new int[capacity];
+        color = new Color[capacity];
+        layer = new int[capacity];
+        mask = new int[capacity];
+        colliders = new long[(capacity + 63) / 64];
+        turnedRotation = new double[capacity];
+        turnedMinX = new double[capacity];
+        turnedMinY = new double[capacity];
+        turnedMaxX = new double[capacity];
+        turnedMaxY = new double[capacity];
+        placedX = new double[capacity];
+        placedY = new double[capacity];
+        placedRotation = new double[capacity];
+        minX = new double[capacity];
+        minY = new double[capacity];
+        maxX = new double[capacity];
+        maxY = new double[capacity];
+    }
+
+    /**
+     * Registers a kind, so entities can be given its look.
+     * @param look the kind
+     * @return the id to give {@link #setLook(int, int)}
+     */
+    int addKind(Kind look) {
+        if (kindCount == kinds.length) {
+            kinds = Arrays.copyOf(kinds, kindCount * 2);
+            kindEnd = Arrays.copyOf(kindEnd, kindCount * 2);
+            kindLoop = Arrays.copyOf(kindLoop, kindCount * 2);
+        }
+        kinds[kindCount] = look;
+        kindEnd[kindCount] = look.frames.length * look.ticksPerFrame;
+        kindLoop[kindCount] = look.loopFrame * look.ticksPerFrame;
+        return kindCount++;
+    }
+
+    /**
+     * Registers a shape, so entities can be given it.
+     * @param outline the shape
+     * @return the id to give {@link #setShape(int, int)}
+     */
+    int addShape(Shape outline) {
+        if (shapeCount == shapes.length) {
+            shapes = Arrays.copyOf(shapes, shapeCount * 2);
+        }
+        shapes[shapeCount] = outline;
+        return shapeCount++;
+    }
+
+    /**
+     * Adds an entity standing still at a point, with just a transform.
+     * @param startX the x-position, in pixels
+     * @param startY the y-position, in pixels
+     * @return the new entity
+     */
+    int add(double startX, double startY) {
+        int e = count++;
+        components[e] = TRANSFORM;
+        x[e] = previousX[e] = startX;
+        y[e] = previousY[e] = startY;
+        rotation[e] = previousRotation[e] = 0;
+        velocityX[e] = velocityY[e] = spin[e] = 0;
+        wrapBelow[e] = Double.NEGATIVE_INFINITY;
+        layer[e] = mask[e] = 0;
+        turnedRotation[e] = placedRotation[e] = Double.NaN;
+        return e;
+    }
+
+    /**
+     * Gives an entity a velocity.
+     * @param e the entity
+     * @param perTickX pixels to the right it moves each tick
+     * @param perTickY pixels down it moves each tick
+     */
+    void setVelocity(int e, double perTickX, double perTickY) {
+        components[e] |= VELOCITY;
+        velocityX[e] = perTickX;
+        velocityY[e] = perTickY;
+    }
+
+    /**
+     * Sets how fast an entity turns, giving it a velocity if it has none.
+     * @param e the entity
+     * @param perTick degrees clockwise it turns each tick
+     */
+    void setSpin(int e, double perTick) {
+        components[e] |= VELOCITY;
+        spin[e] = perTick;
+        turning |= perTick != 0;
+    }
+
+    /**
+     * Makes an entity jump back to the right once it moves left of a line.
+     * @param e the entity
+     * @param belowX the x-value it must go left of
+     * @param toX the x-value it jumps to
+     */
+    void setWrap(int e, double belowX, double toX) {
+        components[e] |= WRAP;
+        wrapBelow[e] = belowX;
+        wrapTo[e] = toX;
+    }
+
+    /**
+     * Gives an entity a look, starting at the first frame.
+     * @param e the entity
+     * @param kindId the id {@link #addKind(Kind)} gave its kind
+     */
+    void setLook(int e, int kindId) {
+        components[e] |= LOOK;
+        kind[e] = kindId;
+        age[e] = 0;
+    }
+
+    /**
+     * Gives an entity an outline. Room for its corners is found the first
+     * time, so set shapes up before the game starts.
+     * @param e the entity
+     * @param shapeId the id {@link #addShape(Shape)} gave the shape
+     */
+    void setShape(int e, int shapeId) {
+        int corners = shapes[shapeId].xs.length;
+        if ((components[e] & SHAPE) == 0 || shapes[shape[e]].xs.length < corners) {
+            if (cornersUsed + corners > cornerX.length) {
+                cornerX = Arrays.copyOf(cornerX, Math.max(cornerX.length * 2, cornersUsed + corners));
+                cornerY = Arrays.copyOf(cornerY, cornerX.length);
+                turnedX = Arrays.copyOf(turnedX, cornerX.length);
+                turnedY = Arrays.copyOf(turnedY, cornerX.length);
+            }
+            cornerStart[e] = cornersUsed;
+            cornersUsed += corners;
+        }
+        components[e] |= SHAPE;
+        shape[e] = shapeId;
+        turnedRotation[e] = placedRotation[e] = Double.NaN;
+    }
+
+    /**
+     * Has an entity's outline drawn, filled with a color.
+     * @param e the entity, which must have a shape
+     * @param fill the color
+     */
+    void setStyle(int e, Color fill) {
+        components[e] |= STYLE;
+        color[e] = fill;
+    }
+
+    /**
+     * Makes an entity a collider. Layers are bits the game picks, such as one
+     * for obstacles and one for pickups.
+     * @param e the entity, which must have a shape
+     * @param onLayers the layers it is on
+     * @param hitsLayers the layers it looks for hits on, or 0 if it is only hit
+     */
+    void setCollider(int e, int onLayers, int hitsLayers) {
+        components[e] |= COLLIDER;
+        colliders[e >> 6] |= 1L << e;
+        layer[e] = onLayers;
+        mask[e] = hitsLayers;
+    }
+
+    /**
+     * Takes components away from an entity, as when it leaves the canvas.
+     * Taking away its velocity stops it. Setting a component again gives it
+     * back.
+     * @param e the entity
+     * @param parts the components, such as <code>STYLE | COLLIDER</code>
+     */
+    void detach(int e, int parts) {
+        components[e] &= ~parts;
+        if ((parts & VELOCITY) != 0) {
+            velocityX[e] = velocityY[e] = spin[e] = 0;
+        }
+        if ((parts & COLLIDER) != 0) {
+            colliders[e >> 6] &= ~(1L << e);
+            if (grid != null) {
+                grid.remove(e);
+            }
+        }
+    }
+
+    /**
+     * Checks whether an entity has every one of some components.
+     * @param e the entity
+     * @param parts the components
+     * @return true if it has them all
+     */
+    boolean has(int e, int parts) {
+        return (components[e] & parts) == parts;
+    }
+
+    /**
+     * Puts an entity somewhere new, without drawing it sliding there.
+     * @param e the entity
+     * @param toX the x-position, in pixels
+     * @param toY the y-position, in pixels
+     * @param degrees how far it is turned
+     */
+    void place(int e, double toX, double toY, double degrees) {
+        x[e] = previousX[e] = toX;
+        y[e] = previousY[e] = toY;
+        rotation[e] = previousRotation[e] = degrees;
+    }
+
+    /**
+     * Moves an entity within this tick, keeping where it was at the last one,
+     * for the game to correct a move the systems made.
+     * @param e the entity
+     * @param toX the x-position, in pixels
+     * @param toY the y-position, in pixels
+     * @param degrees how far it is turned
+     */
+    void set(int e, double toX, double toY, double degrees) {
+        turning |= degrees != rotation[e];
+        x[e] = toX;
+        y[e] = toY;
+        rotation[e] = degrees;
+    }
+
+    /** Returns an entity's x-position.
+     * @param e the entity
+     * @return the x-position, in pixels
+     */
+    double getX(int e) {
+        return x[e];
+    }
+
+    /** Returns an entity's y-position.
+     * @param e the entity
+     * @return the y-position, in pixels
+     */
+    double getY(int e) {
+        return y[e];
+    }
+
+    /** Returns how far an entity is turned.
+     * @param e the entity
+     * @return the rotation, in degrees
+     */
+    double getRotation(int e) {
+        return rotation[e];
+    }
+
+    /** Removes every entity. Registered kinds and shapes stay. */
+    void clear() {
+        if (grid != null) {
+            for (int e = 0; e < count; e++) {
+                grid.remove(e);
+            }
+        }
+        Arrays.fill(colliders, 0);
+        count = 0;
+        cornersUsed = 0;
+        turning = false;
+    }
+
+    /** Returns how many entities there are.
+     * @return the number of entities
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Writes what the systems change about every entity: which components it
+     * has and how far through its animation, in one value, where it is, and
+     * how far it is turned if it has a shape, since nothing else is drawn
+     * turned. How it moves and what it looks for hits on aren't written,
+     * so whatever changes those during a run must set them again each tick.
+     * The entities and their shapes must stay the same until it is loaded.
+     * @param state where the fields are written
+     */
+    void save(StateVector state) {
+        for (int e = 0; e < count; e++) {
+            state.put((long) age[e] << 32 | components[e]);
+            state.put(x[e]);
+            state.put(y[e]);
+            if ((components[e] & SHAPE) != 0) {
+                state.put(rotation[e]);
+            }
+        }
+    }
+
+    /**
+     * Puts every entity back as {@link #save(StateVector)} wrote it, without
+     * drawing a slide from where it was. One that had no velocity then is
+     * stopped.
+     * @param state where the fields are read from
+     */
+    void load(StateVector state) {
+        for (int e = 0; e < count; e++) {
+            long look = state.getLong();
+            components[e] = (int) look;
+            age[e] = (int) (look >>> 32);
+            if ((components[e] & VELOCITY) == 0) {
+                velocityX[e] = velocityY[e] = spin[e] = 0;
+            }
+            if ((components[e] & COLLIDER) != 0) {
+                colliders[e >> 6] |= 1L << e;
+            } else {
+                colliders[e >> 6] &= ~(1L << e);
+                if (grid != null) {
+                    grid.remove(e);
+                }
+            }
+            x[e] = previousX[e] = state.getDouble();
+            y[e] = previousY[e] = state.getDouble();
+            if ((components[e] & SHAPE) != 0) {
+                rotation[e] = previousRotation[e] = state.getDouble();
+            }
+        }
+    }
+
+    /** Runs the moving systems once, in order, for one tick. */
+    void tick() {
+        move();
+        wrap();
+        animate();
+    }
+
+    /**
+     * Remembers where everything was, then moves and turns everything with a
+     * velocity. Entities without one have a velocity of zero, so the loops
+     * don't need to check. Until something turns, turning is skipped.
+     */
+    private void move() {
+        for (int e = 0; e < count; e++) {
+            previousX[e] = x[e];
+            x[e] += velocityX[e];
+        }
+        for (int e = 0; e < count; e++) {
+            previousY[e] = y[e];
+            y[e] += velocityY[e];
+        }
+        if (!turning) return;
+        for (int e = 0; e < count; e++) {
+            previousRotation[e] = rotation[e];
+            rotation[e] += spin[e];
+        }
+    }
+
+    /**
+     * Sends everything that wraps and has gone past its line back to the
+     * right. Nothing can go left of the line of an entity that doesn't wrap.
+     */
+    private void wrap() {
+        for (int e = 0; e < count; e++) {
+            if (x[e] < wrapBelow[e]) {
+                // Reappearing shouldn't be drawn as a slide across the canvas.
+                x[e] = previousX[e] = wrapTo[e];
+            }
+        }
+    }
+
+    /** Steps every animated look, looping back once the last frame is done. */
+    private void animate() {
+        for (int e = 0; e < count; e++) {
+            if ((components[e] & LOOK) != 0 && ++age[e] == kindEnd[kind[e]]) {
+                age[e] = kindLoop[kind[e]];
+            }
+        }
+    }
+
+    /**
+     * Files every collider where it is now, then finds what each collider
+     * that looks for hits is touching on those layers. Read the hits with
+     * {@link #hitSource(int)} and {@link #hitTarget(int)} until the next call.
+     * @return how many hits there are
+     */
+    int collide() {
+        fileColliders();
+        hitCount = 0;
+        for (int word = 0; word < colliders.length; word++) {
+            for (long bits = colliders[word]; bits != 0; bits &= bits - 1) {
+                int e = word << 6 | Long.numberOfTrailingZeros(bits);
+                if (mask[e] != 0) {
+                    findHits(e);
+                }
+            }
+        }
+        return hitCount;
+    }
+
+    /** Files every collider by its bounding box where it is now. */
+    private void fileColliders() {
+        for (int word = 0; word < colliders.length; word++) {
+            for (long bits = colliders[word]; bits != 0; bits &= bits - 1) {
+                int e = word << 6 | Long.numberOfTrailingZeros(bits);
+                box(e);
+                grid.place(e, minX[e], minY[e], maxX[e], maxY[e]);
+            }
+        }
+    }
+
+    /** Adds a hit for each collider on one of an entity's layers that it touches. */
+    private void findHits(int e) {
+        for (int i = 0, found = grid.query(minX[e], minY[e], maxX[e], maxY[e], e); i < found; i++) {
+            int other = grid.found(i);
+            if ((layer[other] & mask[e]) != 0 && touches(e, other)) {
+                if (hitCount == hitSource.length) {
+                    hitSource = Arrays.copyOf(hitSource, hitCount * 2);
+                    hitTarget = Arrays.copyOf(hitTarget, hitCount * 2);
+                }
+                hitSource[hitCount] = e;
+                hitTarget[hitCount++] = other;
+            }
+        }
+    }
+
+    /**
+     * Returns the collider that looked for one of the last hits.
+     * @param i which hit, from 0 to one less than {@link #collide()}'s count
+     * @return the entity
+     */
+    int hitSource(int i) {
+        return hitSource[i];
+    }
+
+    /**
+     * Returns what one of the last hits was on.
+     * @param i which hit, from 0 to one less than {@link #collide()}'s count
+     * @return the entity
+     */
+    int hitTarget(int i) {
+        return hitTarget[i];
+    }
+
+    /**
+     * Tests whether two shaped entities' outlines touch where they are now.
+     * Bounding boxes rule out nearly every pair; two convex outlines then get
+     * the separating-axis test, and anything else is checked for crossing
+     * edges or one sitting inside the other, which works for outlines of any shape.
+     * @param a one entity
+     * @param b the other
+     * @return true if they touch
+     */
+    boolean touches(int a, int b) {
+        box(a);
+        box(b);
+        if (maxX[a] < minX[b] || maxX[b] < minX[a] || maxY[a] < minY[b] || maxY[b] < minY[a]) {
+            return false;
+        }
+        placeCorners(a);
+        placeCorners(b);
+        int startA = cornerStart[a], cornersA = shapes[shape[a]].xs.length;
+        int startB = cornerStart[b], cornersB = shapes[shape[b]].xs.length;
+        if (shapes[shape[a]].convex && shapes[shape[b]].convex) {
+            return !hasSeparatingAxis(startA, cornersA, startB, cornersB)
+                && !hasSeparatingAxis(startB, cornersB, startA, cornersA);
+        }
+        return edgesCross(startA, cornersA, startB, cornersB)
+            || contains(startA, cornersA, cornerX[startB], cornerY[startB])
+            || contains(startB, cornersB, cornerX[startA], cornerY[startA]);
+    }
+
+    /**
+     * Works out a shaped entity's bounding box where it is now. Only the
+     * corners' turn is kept between ticks; moving the box is four additions.
+     */
+    private void box(int e) {
+        turn(e);
+        minX[e] = turnedMinX[e] + x[e];
+        minY[e] = turnedMinY[e] + y[e];
+        maxX[e] = turnedMaxX[e] + x[e];
+        maxY[e] = turnedMaxY[e] + y[e];
+    }
+
+    /** Turns a shaped entity's corners about its centroid, unless it hasn't turned since the last time. */
+    private void turn(int e) {
+        if (rotation[e] == turnedRotation[e]) return;
+        double radians = Math.toRadians(rotation[e]);
+        double c = Math.cos(radians), s = Math.sin(radians);
+        Shape outline = shapes[shape[e]];
+        double left = Double.POSITIVE_INFINITY, top = Double.POSITIVE_INFINITY;
+        double right = Double.NEGATIVE_INFINITY, bottom = Double.NEGATIVE_INFINITY;
+        for (int i = 0, at = cornerStart[e]; i < outline.xs.length; i++, at++) {
+            double dx = outline.xs[i] - outline.centerX, dy = outline.ys[i] - outline.centerY;
+            double px = dx * c - dy * s + outline.centerX;
+            double py = dx * s + dy * c + outline.centerY;
+            turnedX[at] = px;
+            turnedY[at] = py;
+            if (px < left) left = px;
+            if (px > right) right = px;
+            if (py < top) top = py;
+            if (py > bottom) bottom = py;
+        }
+        turnedMinX[e] = left;
+        turnedMinY[e] = top;
+        turnedMaxX[e] = right;
+        turnedMaxY[e] = bottom;
+        turnedRotation[e] = rotation[e];
+    }
+
+    /** Works out where a shaped entity's corners are, unless it hasn't moved or turned since the last time. */
+    private void placeCorners(int e) {
+        if (x[e] == placedX[e] && y[e] == placedY[e] && rotation[e] == placedRotation[e]) return;
+        turn(e);
+        for (int at = cornerStart[e], end = at + shapes[shape[e]].xs.length; at < end; at++) {
+            cornerX[at] = turnedX[at] + x[e];
+            cornerY[at] = turnedY[at] + y[e];
+        }
+        placedX[e] = x[e];
+        placedY[e] = y[e];
+        placedRotation[e] = rotation[e];
+    }
+
+    /** Looks along each edge normal of outline a for a gap between the shadows the two outlines cast on it. */
+    private boolean hasSeparatingAxis(int startA, int cornersA, int startB, int cornersB) {
+        for (int i = 0, j = 1; i < cornersA; i++, j = (j + 1) % cornersA) {
+            double axisX = cornerY[startA + i] - cornerY[startA + j];
+            double axisY = cornerX[startA + j] - cornerX[startA + i];
+            double lowA = Double.POSITIVE_INFINITY, highA = Double.NEGATIVE_INFINITY;
+            for (int k = startA; k < startA + cornersA; k++) {
+                double d = cornerX[k] * axisX + cornerY[k] * axisY;
+                if (d < lowA) lowA = d;
+                if (d > highA) highA = d;
+            }
+            double lowB = Double.POSITIVE_INFINITY, highB = Double.NEGATIVE_INFINITY;
+            for (int k = startB; k < startB + cornersB; k++) {
+                double d = cornerX[k] * axisX + cornerY[k] * axisY;
+                if (d < lowB) lowB = d;
+                if (d > highB) highB = d;
+            }
+            if (highA < lowB || highB < lowA) return true;
+        }
+        return false;
+    }
+
+    /** Checks every edge of outline a against every edge of outline b. */
+    private boolean edgesCross(int startA, int cornersA, int startB, int cornersB) {
+        for (int i = 0, j = 1; i < cornersA; i++, j = (j + 1) % cornersA) {
+            double ax = cornerX[startA + i], ay = cornerY[startA + i];
+            double bx = cornerX[startA + j], by = cornerY[startA + j];
+            for (int k = 0, l = 1; k < cornersB; k++, l = (l + 1) % cornersB) {
+                double cx = cornerX[startB + k], cy = cornerY[startB + k];
+                double dx = cornerX[startB + l], dy = cornerY[startB + l];
+                double d1 = side(cx, cy, dx, dy, ax, ay), d2 = side(cx, cy, dx, dy, bx, by);
+                double d3 = side(ax, ay, bx, by, cx, cy), d4 = side(ax, ay, bx, by, dx, dy);
+                if (((d1 > 0) != (d2 > 0)) && ((d3 > 0) != (d4 > 0))) return true;
+            }
+        }
+        return false;
+    }
+
+    /** Casts a ray from a point and counts the edges of an outline it crosses. */
+    private boolean contains(int start, int corners, double pointX, double pointY) {
+        int crossings = 0;
+        for (int i = 0, j = 1; i < corners; i++, j = (j + 1) % corners) {
+            double ix = cornerX[start + i], iy = cornerY[start + i];
+            double jx = cornerX[start + j], jy = cornerY[start + j];
+            if (((ix < pointX && pointX <= jx) || (jx < pointX && pointX <= ix))
+                && pointY > iy + (jy - iy) / (jx - ix) * (pointX - ix)) {
+                crossings++;
+            }
+        }
+        return crossings % 2 == 1;
+    }
+
+    /** Positive on one side of the line from p to q, negative on the other. */
+    private static double side(double px, double py, double qx, double qy, double rx, double ry) {
+        return (qx - px) * (ry - py) - (qy - py) * (rx - px);
+    }
+
+    /**
+     * Draws every entity that has a look or a style.
+     * @param brush the brush that is being used to draw on the game's canvas
+     * @param alpha how far between the last tick and this one to draw them, 0 to 1
+     */
+    void paint(Graphics brush, double alpha) {
+        paint(brush, alpha, 0, count);
+    }
+
+    /**
+     * Draws the entities in a range that have a look or a style, so the game
+     * can draw something of its own between them.
+     * @param brush the brush that is being used to draw on the game's canvas
+     * @param alpha how far between the last tick and this one to draw them, 0 to 1
+     * @param from the first entity
+     * @param to one past the last entity
+     */
+    void paint(Graphics brush, double alpha, int from, int to) {
+        for (int e = from; e < to; e++) {
+            double drawX = previousX[e] + (x[e] - previousX[e]) * alpha;
+            double drawY = previousY[e] + (y[e] - previousY[e]) * alpha;
+            if ((components[e] & LOOK) != 0) {
+                Kind look = kinds[kind[e]];
+                look.frame(age[e] / look.ticksPerFrame).draw(brush, drawX, drawY);
+            } else if ((components[e] & STYLE) != 0) {
+                int step = (int) Math.floorMod(Math.round(drawRotation(e, alpha)), 360L);
+                shapes[shape[e]].sprite(color[e], step).draw(brush, drawX, drawY);
+            }
+        }
+    }
+
+    /**
+     * Adds where every entity with a look or a style is drawn to a region.
+     * @param region the region being drawn this frame
+     * @param alpha how far between the last tick and this one they are drawn, 0 to 1
+     */
+    void collectDrawn(DirtyRegion region, double alpha) {
+        collectDrawn(region, alpha, 0, count);
+    }
+
+    /**
+     * Adds where the entities in a range with a look or a style are drawn to
+     * a region, with a pixel to spare for rounding.
+     * @param region the region being drawn this frame
+     * @param alpha how far between the last tick and this one they are drawn, 0 to 1
+     * @param from the first entity
+     * @param to one past the last entity
+     */
+    void collectDrawn(DirtyRegion region, double alpha, int from, int to) {
+        for (int e = from; e < to; e++) {
+            double drawX = previousX[e] + (x[e] - previousX[e]) * alpha;
+            double drawY = previousY[e] + (y[e] - previousY[e]) * alpha;
+            if ((components[e] & LOOK) != 0) {
+                Kind look = kinds[kind[e]];
+                region.add((int) Math.floor(drawX) - 1, (int) Math.floor(drawY) - 1, look.width + 3, look.height + 3);
+            } else if ((components[e] & STYLE) != 0) {
+                Shape outline = shapes[shape[e]];
+                double radians = Math.toRadians(drawRotation(e, alpha));
+                double c = Math.cos(radians), s = Math.sin(radians);
+                double left = Double.POSITIVE_INFINITY, top = Double.POSITIVE_INFINITY;
+                double right = Double.NEGATIVE_INFINITY, bottom = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < outline.xs.length; i++) {
+                    double dx = outline.xs[i] - outline.centerX, dy = outline.ys[i] - outline.centerY;
+                    double px = dx * c - dy * s + outline.centerX + drawX;
+                    double py = dx * s + dy * c + outline.centerY + drawY;
+                    left = Math.min(left, px);
+                    right = Math.max(right, px);
+                    top = Math.min(top, py);
+                    bottom = Math.max(bottom, py);
+                }
+                int regionX = (int) Math.floor(left) - 1, regionY = (int) Math.floor(top) - 1;
+                region.add(regionX, regionY, (int) Math.ceil(right) + 2 - regionX, (int) Math.ceil(bottom) + 2 - regionY);
+            }
+        }
+    }
+
+    /** Returns how far an entity is turned <code>alpha</code> of the way through the tick, turning the short way round. */
+    private double drawRotation(int e, double alpha) {
+        double turn = ((rotation[e] - previousRotation[e]) % 360 + 540) % 360 - 180;
+        return previousRotation[e] + turn * alpha;
+    }
+}
@@ -0,0 +1,160 @@
+package game;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+
+/**
+ * FrameCapture saves the game's frames as a numbered sequence of PNG files,
+ * for recording attract loops and bug reports, without slowing the game
+ * down. Frames are drawn into one of {@value #RING} images made up front;
+ * a few background threads encode full images to disk and hand them back.
+ * If every image is still waiting to be encoded when a frame is drawn, that
+ * frame is dropped and counted instead of the game waiting. The file names
+ * carry the frame number, so dropped frames show up as gaps.
+ * <p>
+ * The game loop calls {@link #take()} for an image to draw the frame into,
+ * and {@link #submit(Still)} once it is drawn. Both are only called
+ * from the game loop. When the game exits, capture stops taking frames, the
+ * frames already drawn are given up to {@value #FINISH_MS} ms to be saved,
+ * and then how many frames were saved and dropped is printed.
+ * </p>
+ * @version %I% %G%
+ */
+class FrameCapture {
+
+    /** How many frames can be waiting to be encoded at once. */
+    static final int RING = 8;
+    /** How long the encoders get to finish the frames left when the game exits. */
+    static final long FINISH_MS = 5000;
+
+    /** One frame's image, and which frame it holds. */
+    static final class Still {
+        final BufferedImage image;
+        private long number;
+
+        private Still(BufferedImage image) {
+            this.image = image;
+        }
+    }
+
+    private final File directory;
+    /** Images free to draw into, and drawn images waiting to be encoded */
+    private final ArrayBlockingQueue<Still> free = new ArrayBlockingQueue<>(RING);
+    private final ArrayBlockingQueue<Still> drawn = new ArrayBlockingQueue<>(RING);
+    private final AtomicLong saved = new AtomicLong();
+    /** Images submitted and not yet saved, queued or being encoded */
+    private final AtomicInteger unsaved = new AtomicInteger();
+    private volatile long dropped;
+    private long frames;
+    private final Thread[] workers;
+    /** Set as the game exits; no frame is taken after it */
+    private volatile boolean closing;
+
+    /**
+     * Makes the images and starts the encoding threads.
+     * @param directory where the PNG files go; it is made if it doesn't exist
+     * @param width the frame width, in pixels
+     * @param height the frame height, in pixels
+     * @throws IOException if the directory can't be made
+     */
+    FrameCapture(File directory, int width, int height) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can't make " + directory);
+        }
+        this.directory = directory;
+        for (int i = 0; i < RING; i++) {
+            free.offer(new Still(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB)));
+        }
+
+        workers = new Thread[Math.max(1, Runtime.getRuntime().availableProcessors() / 2)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(this::encode, "frame-capture-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].setPriority(Thread.MIN_PRIORITY);
+            workers[i].start();
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::finish, "frame-capture-finish"));
+    }
+
+    /**
+     * Stops taking frames, waits a while for the ones drawn to be saved and
+     * prints the counts. Runs as the game exits.
+     */
+    private void finish() {
+        closing = true;
+        long deadline = System.nanoTime() + FINISH_MS * 1_000_000;
+        try {
+            for (Thread worker : workers) {
+                long left = (deadline - System.nanoTime()) / 1_000_000;
+                if (left > 0) {
+                    worker.join(left);
+                }
+            }
+        } catch (InterruptedException exc) {
+            // Print what was saved so far.
+        }
+        int unfinished = unsaved.get();
+        System.out.println("Captured " + saved.get() + " frames to " + directory + ", dropped " + dropped
+                           + (unfinished > 0 ? ", " + unfinished + " not finished in time" : ""));
+    }
+
+    /**
+     * Returns an image to draw this frame into, and counts the frame.
+     * @return the image, or null if none is free and the frame is dropped, or
+     *         the game is exiting
+     */
+    Still take() {
+        if (closing) return null;
+        frames++;
+        Still still = free.poll();
+        if (still == null) {
+            dropped++;
+        } else {
+            still.number = frames;
+        }
+        return still;
+    }
+
+    /**
+     * Queues an image from {@link #take()} to be saved, once the frame is drawn.
+     * @param still the image holding the frame
+     */
+    void submit(Still still) {
+        unsaved.incrementAndGet();
+        // The queue has room for every image, so this never fails.
+        drawn.offer(still);
+    }
+
+    /**
+     * Encodes drawn images until the game exits and every image submitted
+     * has been saved. An image taken but never submitted isn't waited for.
+     * Runs on each worker thread.
+     */
+    private void encode() {
+        try {
+            while (!closing || !drawn.isEmpty() || unsaved.get() > 0) {
+                // Wake now and then to see whether the game is exiting.
+                Still still = drawn.poll(50, TimeUnit.MILLISECONDS);
+                if (still == null) continue;
+                try {
+                    ImageIO.write(still.image, "png",
+                                  new File(directory, String.format("frame-%07d.png", still.number)));
+                    saved.incrementAndGet();
+                } catch (IOException exc) {
+                    System.err.println("Can't save frame " + still.number + ": " + exc.getMessage());
+                }
+                unsaved.decrementAndGet();
+                free.offer(still);
+            }
+        } catch (InterruptedException exc) {
+            // Not expected; the shutdown hook waits rather than interrupting.
+        }
+    }
+}
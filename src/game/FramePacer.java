@@ -0,0 +1,85 @@
+package game;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * FramePacer holds the game loop to a steady frame rate. Each frame has a
+ * deadline one period after the last one's, on the <code>System.nanoTime()</code>
+ * clock, so time spent drawing doesn't push later frames back. The loop
+ * parks until just before the deadline and spins the last
+ * {@value #SPIN_NANOS} nanoseconds, since waking from a park can be late by
+ * more than that.
+ * <p>
+ * A frame that misses its deadline goes straight on and counts as late. The
+ * next frames then try to catch up, unless a whole period has been lost, in
+ * which case the deadlines start again from now rather than racing through
+ * frames to make up for it. With no target, frames aren't held back at all;
+ * the loop only yields so the other threads get a turn.
+ * </p>
+ * @version %I% %G%
+ */
+class FramePacer {
+
+    /** How long before a deadline to stop parking and start spinning. */
+    static final long SPIN_NANOS = 500_000;
+
+    private final long period;
+    private long deadline;
+    private long lastFrame;
+    private long late;
+
+    /**
+     * Creates a pacer.
+     * @param framesPerSecond the target frame rate, or 0 for as fast as possible
+     */
+    FramePacer(int framesPerSecond) {
+        period = framesPerSecond > 0 ? 1_000_000_000L / framesPerSecond : 0;
+    }
+
+    /**
+     * Waits for the end of the frame's period.
+     * @return how long it has been since the last call returned, in nanoseconds,
+     *         or 0 the first time
+     */
+    long await() {
+        long now = System.nanoTime();
+        if (period == 0) {
+            Thread.yield();
+        } else if (deadline == 0) {
+            deadline = now;
+        } else if (now - deadline > 0) {
+            late++;
+            if (now - deadline > period) {
+                deadline = now;
+            }
+        } else {
+            long wait;
+            while ((wait = deadline - SPIN_NANOS - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            while (System.nanoTime() - deadline < 0) {
+                Thread.onSpinWait();
+            }
+        }
+        deadline += period;
+
+        long end = System.nanoTime();
+        long took = lastFrame == 0 ? 0 : end - lastFrame;
+        lastFrame = end;
+        return took;
+    }
+
+    /** Returns the time each frame is meant to take.
+     * @return the period in nanoseconds, or 0 if frames aren't held back
+     */
+    long getPeriod() {
+        return period;
+    }
+
+    /** Returns how many frames have missed their deadline.
+     * @return the number of late frames
+     */
+    long getLate() {
+        return late;
+    }
+}
@@ -0,0 +1,311 @@
+package game;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * FrameProfiler times the phases of each frame so stutter can be tracked
+ * down. Code brackets a phase with {@link #begin(Phase)} and
+ * {@link #end(Phase)}, and the game loop calls {@link #endFrame()} once a
+ * frame is on screen. A phase may run several times in a frame (one frame can
+ * hold several ticks); its times are added up.
+ * <p>
+ * The overlay shows the current, average and 99th percentile time of each
+ * phase over the last {@value #HISTORY} frames, and is toggled with F3. It
+ * also shows input latency: from a key being pressed to the first frame that
+ * shows its effect being handed to the display, over the last
+ * {@value #HISTORY} inputs, and how steadily frames are paced: the time
+ * from one frame to the next, the jitter (how much that changed from the
+ * frame before) and how many frames missed their deadline. If the game asks
+ * with {@link #writeCsv(String)}, every frame is also written to a file as a
+ * CSV row by a background thread; rows are dropped (and counted) rather than
+ * stalling the game if the disk falls behind. When neither is on, every call
+ * returns after a single check.
+ * </p>
+ * @version %I% %G%
+ */
+class FrameProfiler {
+
+    /** The parts a frame is split into. */
+    enum Phase {
+        ENTITIES, COLLISION, DRAW, HUD, BLIT, SLEEP
+    }
+
+    /** How many frames the overlay's statistics cover. */
+    static final int HISTORY = 256;
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final String[] NAMES = new String[PHASES.length];
+    static {
+        for (Phase phase : PHASES) {
+            NAMES[phase.ordinal()] = phase.name().toLowerCase();
+        }
+    }
+    private static final int ROWS_IN_FLIGHT = 1024;
+    /** Overlay rows besides the phases: header, input, period, jitter, late and dropped */
+    private static final int OTHER_ROWS = 6;
+    private static final Color OVERLAY_BACK = new Color(0, 0, 0, 170);
+    private static final Font OVERLAY_FONT = new Font("Monospaced", Font.PLAIN, 12);
+
+    /** Flipped from the AWT thread by the F3 key, read by the game thread. */
+    private volatile boolean overlay;
+    private volatile boolean enabled;
+
+    private final long[] started = new long[PHASES.length];
+    private final long[] frame = new long[PHASES.length];
+    private final long[][] history = new long[PHASES.length][HISTORY];
+    private long frames;
+
+    /** Input-to-display latencies, and this frame's for the CSV */
+    private final long[] latencies = new long[HISTORY];
+    private long inputs;
+    private long frameLatency;
+
+    /** Frame periods and jitters, this frame's for the CSV, and the late count */
+    private final long[] periods = new long[HISTORY], jitters = new long[HISTORY];
+    private long framePeriod, frameJitter;
+    private long late;
+
+    private final long[] sorted = new long[HISTORY];
+    private final char[] line = new char[64];
+
+    /** Empty rows waiting to be filled, and filled rows waiting to be written. */
+    private ArrayBlockingQueue<long[]> emptyRows, fullRows;
+    private volatile long droppedRows;
+
+    /** Shows the overlay if it is hidden, or hides it if it is showing. */
+    void toggleOverlay() {
+        overlay = !overlay;
+        enabled = overlay || fullRows != null;
+    }
+
+    /**
+     * Marks the start of a phase.
+     * @param phase the phase that is starting
+     */
+    void begin(Phase phase) {
+        if (!enabled) return;
+        started[phase.ordinal()] = System.nanoTime();
+    }
+
+    /**
+     * Marks the end of a phase, adding the time since its start to this frame.
+     * @param phase the phase that is ending
+     */
+    void end(Phase phase) {
+        if (!enabled) return;
+        int i = phase.ordinal();
+        // A phase that was already running when profiling switched on has no start.
+        if (started[i] != 0) {
+            frame[i] += System.nanoTime() - started[i];
+            started[i] = 0;
+        }
+    }
+
+    /**
+     * Records how long an input took to reach the screen.
+     * @param nanos from the key press to the frame that showed it being displayed
+     */
+    void inputShown(long nanos) {
+        if (!enabled) return;
+        latencies[(int) (inputs % HISTORY)] = nanos;
+        inputs++;
+        frameLatency = nanos;
+    }
+
+    /**
+     * Records how long this frame took from the last one, once it has been
+     * paced.
+     * @param nanos the time since the last frame, or 0 if there was none
+     * @param lateFrames how many frames have missed their deadline so far
+     */
+    void framePaced(long nanos, long lateFrames) {
+        if (!enabled) return;
+        late = lateFrames;
+        if (nanos == 0) return;
+        frameJitter = framePeriod == 0 ? 0 : Math.abs(nanos - framePeriod);
+        framePeriod = nanos;
+    }
+
+    /**
+     * Closes off the frame: its times go into the history and, if CSV is on,
+     * out to the writer. Then the next frame starts from zero.
+     */
+    void endFrame() {
+        if (!enabled) return;
+        int slot = (int) (frames % HISTORY);
+        for (int i = 0; i < PHASES.length; i++) {
+            history[i][slot] = frame[i];
+        }
+        periods[slot] = framePeriod;
+        jitters[slot] = frameJitter;
+        if (fullRows != null) {
+            long[] row = emptyRows.poll();
+            if (row == null) {
+                droppedRows++;
+            } else {
+                row[0] = frames;
+                System.arraycopy(frame, 0, row, 1, PHASES.length);
+                row[PHASES.length + 1] = frameLatency;
+                row[PHASES.length + 2] = framePeriod;
+                row[PHASES.length + 3] = frameJitter;
+                fullRows.offer(row);
+            }
+        }
+        Arrays.fill(frame, 0);
+        frameLatency = 0;
+        frames++;
+    }
+
+    /**
+     * Draws the overlay in the top-left corner, if it is showing. Times are in
+     * microseconds.
+     * @param brush the brush that is being used to draw on the game's canvas
+     */
+    void paint(Graphics brush) {
+        if (!overlay) return;
+        int rows = PHASES.length + OTHER_ROWS;
+        brush.setColor(OVERLAY_BACK);
+        brush.fillRect(4, 4, 260, rows * 14 + 8);
+        brush.setColor(Color.WHITE);
+        brush.setFont(OVERLAY_FONT);
+
+        int y = 20;
+        int end = Chars.putText("phase         cur    avg    p99", line, 0);
+        brush.drawChars(line, 0, end, 10, y);
+
+        int count = (int) Math.min(frames, HISTORY);
+        int last = (int) ((frames + HISTORY - 1) % HISTORY);
+        for (int i = 0; i < PHASES.length; i++) {
+            y += 14;
+            paintRow(brush, NAMES[i], history[i], count, last, y);
+        }
+        y += 14;
+        paintRow(brush, "input", latencies, (int) Math.min(inputs, HISTORY),
+                 (int) ((inputs + HISTORY - 1) % HISTORY), y);
+        y += 14;
+        paintRow(brush, "period", periods, count, last, y);
+        y += 14;
+        paintRow(brush, "jitter", jitters, count, last, y);
+        y += 14;
+        end = Chars.putText("late frames ", line, 0);
+        end = Chars.putDigits(late, 1, line, end);
+        brush.drawChars(line, 0, end, 10, y);
+
+        if (fullRows != null) {
+            y += 14;
+            end = Chars.putText("csv rows dropped ", line, 0);
+            end = Chars.putDigits(droppedRows, 1, line, end);
+            brush.drawChars(line, 0, end, 10, y);
+        }
+    }
+
+    /**
+     * Draws one overlay row: the latest, average and 99th percentile of the
+     * first <code>count</code> values of a history.
+     */
+    private void paintRow(Graphics brush, String name, long[] values, int count, int last, int y) {
+        long sum = 0;
+        for (int f = 0; f < count; f++) {
+            sorted[f] = values[f];
+            sum += values[f];
+        }
+        Arrays.sort(sorted, 0, count);
+        long current = count == 0 ? 0 : values[last];
+        long average = count == 0 ? 0 : sum / count;
+        long p99 = count == 0 ? 0 : sorted[Math.min(count - 1, (int) (count * 0.99))];
+
+        int end = Chars.putText(name, line, 0);
+        while (end < 10) line[end++] = ' ';
+        end = Chars.putPadded(current / 1000, 7, line, end);
+        end = Chars.putPadded(average / 1000, 7, line, end);
+        end = Chars.putPadded(p99 / 1000, 7, line, end);
+        brush.drawChars(line, 0, end, 10, y);
+    }
+
+    /**
+     * Adds where the overlay is drawn to a region, if it is showing.
+     * @param region the region being drawn this frame
+     */
+    void collectDrawn(DirtyRegion region) {
+        if (!overlay) return;
+        region.add(4, 4, 260, (PHASES.length + OTHER_ROWS) * 14 + 8);
+    }
+
+    /**
+     * Opens a CSV file and starts the thread that writes rows to it. When the
+     * game exits, the rows still waiting are written and the file is flushed.
+     * Only one profiler in a process should write a given file.
+     * @param path where the CSV goes
+     */
+    void writeCsv(String path) {
+        BufferedWriter out;
+        try {
+            out = new BufferedWriter(new FileWriter(path));
+            out.write("frame");
+            for (Phase phase : PHASES) {
+                out.write(',');
+                out.write(NAMES[phase.ordinal()]);
+            }
+            out.write(",input,period,jitter");
+            out.newLine();
+        } catch (IOException exc) {
+            System.err.println("Can't write frame timings to " + path + ": " + exc.getMessage());
+            return;
+        }
+
+        emptyRows = new ArrayBlockingQueue<>(ROWS_IN_FLIGHT);
+        fullRows = new ArrayBlockingQueue<>(ROWS_IN_FLIGHT);
+        for (int i = 0; i < ROWS_IN_FLIGHT; i++) {
+            emptyRows.offer(new long[PHASES.length + 4]);
+        }
+        enabled = true;
+
+        Thread writer = new Thread(() -> {
+            try {
+                while (true) {
+                    long[] row = fullRows.take();
+                    writeRow(out, row);
+                    emptyRows.offer(row);
+                }
+            } catch (InterruptedException | IOException exc) {
+                // The game is closing, or the disk gave up; either way stop writing.
+            }
+        }, "frame-profiler-csv");
+        writer.setDaemon(true);
+        writer.start();
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            writer.interrupt();
+            try {
+                writer.join(1000);
+                if (writer.isAlive()) {
+                    // Still in a write of its own; the file mustn't be touched from two threads.
+                    return;
+                }
+                for (long[] row = fullRows.poll(); row != null; row = fullRows.poll()) {
+                    writeRow(out, row);
+                }
+                out.flush();
+            } catch (InterruptedException | IOException exc) {
+                // Nothing more can be done on the way out.
+            }
+        }));
+    }
+
+    /** Writes one row as a line of the CSV. */
+    private static void writeRow(BufferedWriter out, long[] row) throws IOException {
+        out.write(Long.toString(row[0]));
+        for (int i = 1; i < row.length; i++) {
+            out.write(',');
+            out.write(Long.toString(row[i]));
+        }
+        out.newLine();
+    }
+}
@@ -2,16 +2,64 @@ package game;
 
 /*
 CLASS: Game
-DESCRIPTION: A painted canvas in its own window, updated every tenth second.
+DESCRIPTION: A painted canvas in its own window. The game logic advances in
+             fixed ticks on its own thread while rendering happens as often
+             as the screen allows, interpolating between the last two ticks.
+             Frames are drawn straight into a page-flipped BufferStrategy by
+             the game thread, not through AWT's repaint cycle. With
+             -Dsugardash.dirty=true only the parts of the screen that changed
+             are drawn and copied instead; see 'renderDirty'. With
+             -Dsugardash.scale=auto the scene is drawn smaller when frames
+             run long; see 'paintScene'. Frames are paced to
+             -Dsugardash.fps (60 by default, 0 for no limit). With
+             -Dsugardash.capture=DIR every frame is also saved there as a PNG
+             file by background threads; see 'FrameCapture'.
 USAGE: Extended by YourGameName.
 NOTE: You don't need to understand the details here, no fiddling neccessary.*/
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferStrategy;
+import java.io.File;
+import java.io.IOException;
+import java.awt.image.VolatileImage;
 
 abstract class Game extends Canvas {
+  // The logic rate. 100 ticks a second matches the old sleep(10) cadence,
+  // so every per-tick constant in the game keeps its original feel.
+  protected static final int TICKS_PER_SECOND = 100;
+  protected static final long TICK_NANOS = 1_000_000_000L / TICKS_PER_SECOND;
+  // Never run more than this many catch-up ticks for a single frame, so a
+  // long stall (debugger, window drag) can't spiral into a frozen game.
+  private static final int MAX_TICKS_PER_FRAME = 10;
+
   protected boolean on = true;
   protected int width, height;
-  protected Image buffer;
+  protected BufferStrategy strategy; // Its back buffers live in video memory where they can.
+  // In dirty-rectangle mode, a back buffer that keeps its picture between
+  // frames, and what was drawn over the background last frame and this one.
+  private final boolean dirtyOnly = Boolean.getBoolean("sugardash.dirty");
+  private VolatileImage backBuffer;
+  private DirtyRegion drawnBefore, drawnNow, dirty;
+  // Set when the window may have been drawn over, so all of it is copied again.
+  private volatile boolean exposed = true;
+  // Holds each frame to the target rate.
+  private final FramePacer pacer = new FramePacer(Integer.getInteger("sugardash.fps", 60));
+  // In scaled mode, what picks the scale, and the smaller picture drawn at it.
+  // Dirty-rectangle mode always draws at full size.
+  private final ResolutionScaler scaler =
+      "auto".equals(System.getProperty("sugardash.scale")) ? new ResolutionScaler(frameBudget()) : null;
+  private VolatileImage scaled;
+  // Where frames are saved, if they are.
+  private FrameCapture capture;
+  // When this frame's ticks started, from System.nanoTime().
+  private long frameStarted;
+  // How far we are between the previous tick and the next one, 0 to 1.
+  protected double alpha = 1;
+  // Times each part of a frame, when asked to.
+  protected final FrameProfiler profiler = new FrameProfiler();
+  // When the oldest input applied since the last frame was pressed, from
+  // System.nanoTime(), or 0. Set by 'tick'; the next frame shown clears it.
+  protected long unshownInput;
   
 	public Game(String name, int inWidth, int inHeight) {
 	  width = inWidth;
@@ -25,25 +73,269 @@ abstract class Game extends Canvas {
     frame.setResizable(false);
     frame.addWindowListener(new WindowAdapter() { 
       public void windowClosing(WindowEvent e) {System.exit(0);} 
+      public void windowActivated(WindowEvent e) {exposed = true;}
+      public void windowDeiconified(WindowEvent e) {exposed = true;}
     });
     
-    buffer = createImage(width, height);
+    // We draw every frame ourselves, so AWT's paint requests are noise.
+    setIgnoreRepaint(true);
+    String captureDir = System.getProperty("sugardash.capture");
+    if (captureDir != null) {
+      try {
+        capture = new FrameCapture(new File(captureDir), width, height);
+      } catch (IOException exc) {
+        System.err.println("Can't capture frames to " + captureDir + ": " + exc.getMessage());
+      }
+    }
+    // Only the windowed game writes frame timings, so games run headless
+    // alongside it can't clobber the file.
+    String profileCsv = System.getProperty("sugardash.profile.csv");
+    if (profileCsv != null) {
+      profiler.writeCsv(profileCsv);
+    }
+    if (dirtyOnly) {
+      drawnBefore = new DirtyRegion(width, height);
+      drawnNow = new DirtyRegion(width, height);
+      dirty = new DirtyRegion(width, height);
+    } else {
+      strategy = createStrategy();
+    }
 	}
   
-  // 'paint' will be called every tenth of a second that the game is on.
+  // A game with no window at all, for benchmarks and simulations that drive
+  // 'tick' and 'paint' themselves. There is no buffer and no loop.
+  protected Game(int inWidth, int inHeight) {
+    width = inWidth;
+    height = inHeight;
+  }
+
+  // 'tick' advances the game logic by exactly one fixed step.
+  abstract public void tick();
+
+  // 'paint' draws the current state, using 'alpha' to interpolate motion.
 	abstract public void paint(Graphics brush);
   
-  // 'update' paints to a buffer then to the screen, then waits a tenth of
-  // a second before repeating itself, assuming the game is on. This is done
-  // to avoid a choppy painting experience if repainted in pieces.
-  public void update(Graphics brush) {
-    paint(buffer.getGraphics());
-		brush.drawImage(buffer,0,0,this);
-    if (on) {sleep(10); repaint();}
+  // 'collectDrawn' adds to 'region' everywhere 'paint' would draw anything but
+  // the unchanging background this frame. Games that can't tell draw it all.
+  protected void collectDrawn(DirtyRegion region) {
+    region.addFull();
   }
-  
-  // 'sleep' is a simple helper function used in 'update'.
-  private void sleep(int time) {
-    try {Thread.sleep(time);} catch(Exception exc){};
+
+  // 'update' is left empty: the game thread paints every frame in 'render',
+  // and painting from the AWT thread as well would race it.
+  public void update(Graphics brush) {}
+
+  // 'start' launches the game loop on its own thread.
+  public void start() {
+    Thread loop = new Thread(this::run, "game-loop");
+    loop.setDaemon(true);
+    loop.start();
+  }
+
+  // 'run' is the fixed-timestep loop: real time is banked in an accumulator
+  // and spent in whole ticks, and whatever is left over becomes 'alpha'.
+  // Only this thread touches the game; input from the AWT thread has to come
+  // through a queue that 'tick' drains.
+  private void run() {
+    long previous = System.nanoTime();
+    long accumulator = 0;
+    while (on) {
+      long now = System.nanoTime();
+      frameStarted = now;
+      accumulator += now - previous;
+      previous = now;
+
+      int ticks = 0;
+      while (accumulator >= TICK_NANOS && ticks < MAX_TICKS_PER_FRAME) {
+        tick();
+        accumulator -= TICK_NANOS;
+        ticks++;
+      }
+      if (ticks == MAX_TICKS_PER_FRAME) accumulator = 0;
+      alpha = (double) accumulator / TICK_NANOS;
+
+      render();
+      profiler.begin(FrameProfiler.Phase.SLEEP);
+      long period = pacer.await();
+      profiler.end(FrameProfiler.Phase.SLEEP);
+      profiler.framePaced(period, pacer.getLate());
+      profiler.endFrame();
+    }
+  }
+
+  // 'render' paints a frame into the back buffer and flips it onto the
+  // screen. Video memory can be lost at any time (a mode switch, another
+  // full-screen app), so the frame is redrawn until it makes it intact.
+  // Once it is handed to the display, any input it shows has its latency
+  // recorded. When capturing, the scene is drawn into the capture's image and
+  // copied from there, so it is only drawn once.
+  private void render() {
+    if (dirtyOnly) {
+      renderDirty();
+      return;
+    }
+    FrameCapture.Still still = capture == null ? null : capture.take();
+    do {
+      do {
+        Graphics brush = strategy.getDrawGraphics();
+        try {
+          if (still == null) {
+            paintScene(brush);
+          } else {
+            Graphics frame = still.image.createGraphics();
+            try {
+              paintScene(frame);
+            } finally {
+              frame.dispose();
+            }
+            brush.drawImage(still.image, 0, 0, null);
+          }
+          profiler.paint(brush);
+        } finally {
+          brush.dispose();
+        }
+      } while (strategy.contentsRestored());
+      profiler.begin(FrameProfiler.Phase.BLIT);
+      strategy.show();
+      profiler.end(FrameProfiler.Phase.BLIT);
+    } while (strategy.contentsLost());
+    profiler.begin(FrameProfiler.Phase.BLIT);
+    Toolkit.getDefaultToolkit().sync();
+    profiler.end(FrameProfiler.Phase.BLIT);
+    if (still != null) capture.submit(still);
+    if (unshownInput != 0) {
+      profiler.inputShown(System.nanoTime() - unshownInput);
+      unshownInput = 0;
+    }
+  }
+
+  // 'paintScene' paints the game into 'brush' at the scale the scaler picked,
+  // and tells it how long the frame has taken so far. Below full size the
+  // game paints into a smaller image through a shrinking transform, so it
+  // keeps drawing in the same units, 'width' by 'height', and the image is
+  // stretched over the whole buffer. The profiler's overlay is always drawn
+  // at full size, on top.
+  private void paintScene(Graphics brush) {
+    double scale = scaler == null ? 1 : scaler.getScale();
+    if (scale == 1) {
+      paint(brush);
+    } else {
+      int w = (int) Math.ceil(width * scale), h = (int) Math.ceil(height * scale);
+      GraphicsConfiguration gc = getGraphicsConfiguration();
+      do {
+        if (scaled == null || scaled.getWidth() != w || scaled.getHeight() != h
+            || scaled.validate(gc) == VolatileImage.IMAGE_INCOMPATIBLE) {
+          if (scaled != null) scaled.flush();
+          scaled = gc.createCompatibleVolatileImage(w, h);
+        }
+        Graphics2D small = scaled.createGraphics();
+        try {
+          small.scale((double) w / width, (double) h / height);
+          paint(small);
+        } finally {
+          small.dispose();
+        }
+      } while (scaled.contentsLost());
+      Graphics2D stretch = (Graphics2D) brush;
+      stretch.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      stretch.drawImage(scaled, 0, 0, width, height, null);
+    }
+    if (scaler != null) scaler.frameTook(System.nanoTime() - frameStarted);
+  }
+
+  // 'renderDirty' is 'render' for dirty-rectangle mode. A pixel only needs
+  // drawing again if something was over the background there last frame or
+  // is this frame, so the frame is painted once into the back buffer,
+  // clipped to just those rectangles, and just those are copied to the
+  // screen. If the back buffer was lost, it is all drawn again.
+  private void renderDirty() {
+    GraphicsConfiguration gc = getGraphicsConfiguration();
+    do {
+      int state = backBuffer == null ? VolatileImage.IMAGE_INCOMPATIBLE : backBuffer.validate(gc);
+      if (state == VolatileImage.IMAGE_INCOMPATIBLE) {
+        backBuffer = gc.createCompatibleVolatileImage(width, height);
+        state = VolatileImage.IMAGE_RESTORED;
+      }
+      drawnNow.clear();
+      collectDrawn(drawnNow);
+      profiler.collectDrawn(drawnNow);
+      dirty.clear();
+      if (state == VolatileImage.IMAGE_RESTORED) {
+        dirty.addFull();
+      }
+      dirty.addAll(drawnBefore);
+      dirty.addAll(drawnNow);
+
+      Graphics brush = backBuffer.getGraphics();
+      try {
+        if (dirty.size() > 0) {
+          dirty.clipAll(brush);
+          paint(brush);
+          profiler.paint(brush);
+        }
+      } finally {
+        brush.dispose();
+      }
+
+      profiler.begin(FrameProfiler.Phase.BLIT);
+      boolean copyAll = exposed;
+      exposed = false;
+      Graphics screen = getGraphics();
+      if (screen != null) {
+        try {
+          if (copyAll) {
+            screen.drawImage(backBuffer, 0, 0, null);
+          }
+          for (int i = 0; !copyAll && i < dirty.size(); i++) {
+            dirty.copy(screen, backBuffer, i);
+          }
+        } finally {
+          screen.dispose();
+        }
+      }
+      Toolkit.getDefaultToolkit().sync();
+      profiler.end(FrameProfiler.Phase.BLIT);
+    } while (backBuffer.contentsLost());
+
+    FrameCapture.Still still = capture == null ? null : capture.take();
+    if (still != null) {
+      Graphics frame = still.image.createGraphics();
+      try {
+        frame.drawImage(backBuffer, 0, 0, null);
+      } finally {
+        frame.dispose();
+      }
+      capture.submit(still);
+    }
+
+    DirtyRegion swap = drawnBefore;
+    drawnBefore = drawnNow;
+    drawnNow = swap;
+    if (unshownInput != 0) {
+      profiler.inputShown(System.nanoTime() - unshownInput);
+      unshownInput = 0;
+    }
+  }
+
+  // 'createStrategy' asks for two accelerated pages that are flipped, and
+  // settles for whatever double buffering the platform has if it can't.
+  private BufferStrategy createStrategy() {
+    BufferCapabilities flipping = new BufferCapabilities(
+        new ImageCapabilities(true), new ImageCapabilities(true),
+        BufferCapabilities.FlipContents.UNDEFINED);
+    try {
+      createBufferStrategy(2, flipping);
+    } catch (AWTException exc) {
+      createBufferStrategy(2);
+    }
+    return getBufferStrategy();
+  }
+
+  // 'frameBudget' is how long the ticks and drawing of one frame may take
+  // before the scaler draws smaller: the paced frame, or a 60 Hz display's
+  // frame if there is no limit.
+  private long frameBudget() {
+    long period = pacer.getPeriod();
+    return period > 0 ? period : 1_000_000_000L / 60;
   }
 }
\ No newline at end of file
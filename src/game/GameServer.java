@@ -0,0 +1,269 @@
+package game;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * GameServer runs the authoritative game for many players at once, one
+ * headless <a href="#{@link}">{@link SugarDash}</a> session per connection.
+ * Sessions tick at the game's own rate on a small shared pool of threads, one
+ * per core, and all their sockets are read by a single thread, so thousands of
+ * sessions fit in one JVM without a thread each.
+ * <p>
+ * The protocol is one byte per command from the client: <code>j</code> or a
+ * space to jump, <code>r</code> to start a new run once the last one is over,
+ * and <code>s</code> to ask for the session's status. The server answers
+ * <code>s</code>, and tells the client when a run ends, with a line of text:
+ * <code>ticks score running|over</code>. Anything else is ignored.
+ * </p>
+ * Run with <code>java -cp bin game.GameServer [port]</code>; the server only
+ * listens on the loopback address. The port defaults to {@value #PORT}.
+ * @version %I% %G%
+ */
+class GameServer {
+
+    /** The port the server listens on if none is given. */
+    static final int PORT = 7460;
+
+    private final Selector selector;
+    private final ServerSocketChannel listener;
+    private final ScheduledExecutorService ticker;
+    private final AtomicInteger sessions = new AtomicInteger();
+    /** Every socket is read into this, on the selector thread only. */
+    private final ByteBuffer incoming = ByteBuffer.allocateDirect(512);
+
+    /**
+     * Session is one player's game and the connection it is played over. Its
+     * game, and the line being sent, are only touched while holding the
+     * game's lock, since ticks and inputs come from different threads.
+     */
+    private final class Session {
+        private final SocketChannel channel;
+        private final SugarDash game = new SugarDash(800, 600);
+        /** The status line being sent; what is left of it is still to go */
+        private final ByteBuffer outgoing = ByteBuffer.allocate(64).flip();
+        private SelectionKey key;
+        private ScheduledFuture<?> ticking;
+        /** Whether the client has been told the current run is over */
+        private boolean told;
+
+        Session(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /** Advances the game one tick, and tells the client if that ended the run. */
+        void tick() {
+            synchronized (game) {
+                game.tick();
+                if (game.isGameOver() && !told) {
+                    told = true;
+                    sendStatus();
+                }
+            }
+        }
+
+        /**
+         * Applies one command byte from the client.
+         * @param command the byte that was sent
+         */
+        void handle(byte command) {
+            synchronized (game) {
+                switch (command) {
+                case 'j': case ' ':
+                    game.press(SugarDash.INPUT_JUMP);
+                    break;
+                case 'r':
+                    if (game.isGameOver()) {
+                        game.resetGame();
+                        told = false;
+                    }
+                    break;
+                case 's':
+                    sendStatus();
+                    break;
+                default:
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Writes the status line without waiting. A client that has stopped
+         * reading just misses it: while part of the last line is still to go,
+         * the new one is dropped whole, and the selector thread sends the
+         * rest once the socket has room, so lines never come cut or run
+         * together.
+         */
+        private void sendStatus() {
+            if (outgoing.hasRemaining()) {
+                return;
+            }
+            String line = game.getTicks() + " " + game.getScore() + " "
+                        + (game.isGameOver() ? "over" : "running") + "\n";
+            outgoing.clear();
+            outgoing.put(line.getBytes(StandardCharsets.US_ASCII)).flip();
+            flush();
+            if (outgoing.hasRemaining()) {
+                try {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    selector.wakeup();
+                } catch (CancelledKeyException exc) {
+                    // Hung up already; nothing more will be sent.
+                }
+            }
+        }
+
+        /**
+         * Sends as much of the status line as the socket takes.
+         * @return true once all of it has gone
+         */
+        private boolean flush() {
+            try {
+                channel.write(outgoing);
+            } catch (IOException exc) {
+                // The selector thread sees the broken connection and closes it.
+                outgoing.limit(outgoing.position());
+            }
+            return !outgoing.hasRemaining();
+        }
+
+        /** Sends the rest of a status line once the socket has room, then stops watching for room. */
+        void finishStatus() {
+            synchronized (game) {
+                if (flush()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+        }
+
+        /** Stops ticking and hangs up. */
+        void close() {
+            ticking.cancel(false);
+            try {
+                channel.close();
+            } catch (IOException exc) {
+                // Closed either way.
+            }
+            sessions.decrementAndGet();
+        }
+    }
+
+    /**
+     * Opens the listening socket and the tick threads.
+     * @param port the loopback port to listen on
+     * @throws IOException if the port can't be opened
+     */
+    GameServer(int port) throws IOException {
+        selector = Selector.open();
+        listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress("127.0.0.1", port), 1024);
+        listener.configureBlocking(false);
+        listener.register(selector, SelectionKey.OP_ACCEPT);
+
+        AtomicInteger threads = new AtomicInteger();
+        ticker = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+            Thread thread = new Thread(task, "session-ticker-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Accepts connections and reads their commands until the thread is
+     * interrupted.
+     * @throws IOException if the listening socket fails
+     */
+    void serve() throws IOException {
+        while (!Thread.currentThread().isInterrupted()) {
+            selector.select();
+            Iterator<SelectionKey> ready = selector.selectedKeys().iterator();
+            while (ready.hasNext()) {
+                SelectionKey key = ready.next();
+                ready.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+                if (key.isWritable()) {
+                    ((Session) key.attachment()).finishStatus();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    read(key);
+                }
+            }
+        }
+    }
+
+    /** Starts a session for every connection waiting to be accepted. */
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = listener.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Session session = new Session(channel);
+            session.key = channel.register(selector, SelectionKey.OP_READ, session);
+            session.ticking = ticker.scheduleAtFixedRate(session::tick, Game.TICK_NANOS,
+                                                         Game.TICK_NANOS, TimeUnit.NANOSECONDS);
+            sessions.incrementAndGet();
+        }
+    }
+
+    /** Hands each byte a client sent to its session, or ends the session on hang-up. */
+    private void read(SelectionKey key) {
+        Session session = (Session) key.attachment();
+        try {
+            incoming.clear();
+            if (session.channel.read(incoming) < 0) {
+                key.cancel();
+                session.close();
+                return;
+            }
+            incoming.flip();
+            while (incoming.hasRemaining()) {
+                session.handle(incoming.get());
+            }
+        } catch (IOException exc) {
+            key.cancel();
+            session.close();
+        }
+    }
+
+    /** Returns the port the server is listening on.
+     * @return the port number
+     * @throws IOException if the socket has been closed
+     */
+    int getPort() throws IOException {
+        return ((InetSocketAddress) listener.getLocalAddress()).getPort();
+    }
+
+    /** Returns how many sessions are connected.
+     * @return the number of live sessions
+     */
+    int getSessions() {
+        return sessions.get();
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : PORT;
+        GameServer server = new GameServer(port);
+        System.out.println("SugarDash server listening on 127.0.0.1:" + port);
+        server.serve();
+    }
+}
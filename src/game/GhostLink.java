@@ -0,0 +1,280 @@
+package game;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * GhostLink connects a game to a <a href="#{@link}">{@link GhostRelay}</a> so
+ * its player races the ghosts of everyone else in the same match. Each tick
+ * the game sends where its player is and takes in the newest snapshot of the
+ * others, through a non-blocking socket, so the game thread never waits on
+ * the network; a tick with nothing new just keeps the ghosts where they were.
+ * <p>
+ * Ghosts are drawn as translucent copies of the player, as far ahead of or
+ * behind the real one as they are along the level. Each is an entity of its
+ * own <a href="#{@link}">{@link Entities}</a>, posed at its last two
+ * snapshots, so it moves between them by the same <code>alpha</code> as
+ * everything else, at any frame rate. Ghosts whose run is over aren't drawn.
+ * Nothing is allocated once the link is open, apart from the ghosts'
+ * sprites the first time each rotation is drawn.
+ * </p>
+ * Run with <code>java -cp bin game.GhostLink match file.sdr...</code> to race
+ * recorded runs: each recording plays in real time as a ghost in the match,
+ * starting over a second after it ends.
+ * @version %I% %G%
+ */
+class GhostLink {
+
+    private static final Color GHOST_COLOR = new Color(255, 255, 255, 80);
+    private static final int MAX = GhostSnapshots.MAX_GHOSTS;
+
+    private final DatagramChannel channel;
+    private final int match;
+    private final GhostSnapshots snapshots = new GhostSnapshots(1, MAX);
+    /** This player's snapshot, in its one slot */
+    private final int[] self = new int[GhostSnapshots.FIELDS];
+    private final ByteBuffer incoming = ByteBuffer.allocateDirect(GhostSnapshots.MAX_PACKET + 1);
+    private final ByteBuffer outgoing = ByteBuffer.allocateDirect(GhostSnapshots.MAX_PACKET + 5);
+
+    /** Each ghost's distance along the level at this tick */
+    private final double[] distance = new double[MAX];
+    /** Ghosts with a pose, and those whose run is over */
+    private long posed, over;
+    /** How far this player has come */
+    private double local;
+
+    private final double playerX;
+    private final int side, width;
+    /** One entity per ghost slot, in the player's shape */
+    private final Entities looks = new Entities(MAX);
+    private long bytesSent, bytesReceived, packetsReceived;
+
+    /**
+     * Opens a link to a relay on this machine.
+     * @param port the relay's loopback port
+     * @param match which match to race in
+     * @param shape the player's shape, whose pictures the ghosts share
+     * @param playerX where the player stands, in pixels from the left
+     * @param side the player's side length, in pixels
+     * @param width the canvas width, in pixels
+     * @throws IOException if the socket can't be opened
+     */
+    GhostLink(int port, int match, Entities.Shape shape, double playerX, int side, int width) throws IOException {
+        this.match = match;
+        this.playerX = playerX;
+        this.side = side;
+        this.width = width;
+        int shapeId = looks.addShape(shape);
+        for (int g = 0; g < MAX; g++) {
+            looks.setShape(looks.add(0, 0), shapeId);
+        }
+        channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.connect(new InetSocketAddress("127.0.0.1", port));
+    }
+
+    /**
+     * Takes in the ghosts' newest snapshot and sends the player's own. Called
+     * once a tick, on the game thread.
+     * @param scrolled how far the player has come, in pixels
+     * @param playerY the player's height, in pixels from the top
+     * @param playerRotation how far the player is turned, in degrees
+     * @param score the player's score
+     * @param runOver whether the player's run has ended
+     */
+    void exchange(double scrolled, double playerY, double playerRotation, int score, boolean runOver) {
+        receive();
+        local = scrolled;
+        long present = snapshots.present();
+        over = 0;
+        for (int g = 0; g < MAX; g++) {
+            long bit = 1L << g;
+            if ((present & bit) == 0) {
+                looks.detach(g, Entities.STYLE);
+                continue;
+            }
+            distance[g] = snapshots.value(g, GhostSnapshots.DISTANCE) / 4.0;
+            double x = playerX + distance[g] - local;
+            double y = snapshots.value(g, GhostSnapshots.Y) / 4.0;
+            double rotation = snapshots.value(g, GhostSnapshots.ROTATION);
+            if (snapshots.value(g, GhostSnapshots.OVER) != 0) {
+                over |= bit;
+            }
+            double previousX = x;
+            if ((posed & bit) == 0) {
+                // A ghost that just turned up shouldn't slide in from wherever its slot last was.
+                looks.place(g, x, y, rotation);
+            } else {
+                // Its last snapshot is where it moves from.
+                previousX = looks.getX(g);
+                looks.place(g, previousX, looks.getY(g), looks.getRotation(g));
+                looks.set(g, x, y, rotation);
+            }
+            // Drawn if it is on the canvas anywhere between the two snapshots
+            if ((over & bit) == 0 && Math.max(previousX, x) >= -2 * side && Math.min(previousX, x) <= width) {
+                looks.setStyle(g, GHOST_COLOR);
+            } else {
+                looks.detach(g, Entities.STYLE);
+            }
+        }
+        posed = present;
+
+        self[GhostSnapshots.DISTANCE] = (int) Math.round(scrolled * 4);
+        self[GhostSnapshots.Y] = (int) Math.round(playerY * 4);
+        self[GhostSnapshots.ROTATION] = (int) Math.floorMod(Math.round(playerRotation), 360L);
+        self[GhostSnapshots.SCORE] = score;
+        self[GhostSnapshots.OVER] = runOver ? 1 : 0;
+        send();
+    }
+
+    /** Takes in every packet waiting, keeping the newest snapshot. */
+    void receive() {
+        try {
+            while (true) {
+                incoming.clear();
+                if (channel.read(incoming) <= 0) return;
+                incoming.flip();
+                packetsReceived++;
+                bytesReceived += incoming.remaining();
+                if (incoming.get() == GhostRelay.MAGIC) {
+                    snapshots.read(incoming);
+                }
+            }
+        } catch (IOException exc) {
+            // No relay yet, or it went away; the ghosts stay put until it answers.
+        }
+    }
+
+    /** Sends the player's latest snapshot again, without waiting. */
+    void send() {
+        outgoing.clear();
+        outgoing.put(GhostRelay.MAGIC);
+        outgoing.putInt(match);
+        snapshots.write(outgoing, self, 1L);
+        outgoing.flip();
+        bytesSent += outgoing.remaining();
+        try {
+            channel.write(outgoing);
+        } catch (IOException exc) {
+            // As above: this one is lost, and the next is measured from an older one.
+        }
+    }
+
+    /**
+     * Draws every ghost that is on the canvas and still running, under the player.
+     * @param brush the brush that is being used to draw on the game's canvas
+     * @param alpha how far between the last tick and this one to draw them, 0 to 1
+     */
+    void paint(Graphics brush, double alpha) {
+        looks.paint(brush, alpha);
+    }
+
+    /**
+     * Adds where {@link #paint(Graphics, double)} draws the ghosts to a region.
+     * @param region the region being drawn this frame
+     * @param alpha how far between the last tick and this one they are drawn, 0 to 1
+     */
+    void collectDrawn(DirtyRegion region, double alpha) {
+        looks.collectDrawn(region, alpha);
+    }
+
+    /** Returns how many ghosts are still running.
+     * @return the number of ghosts whose run isn't over
+     */
+    int racing() {
+        return Long.bitCount(posed & ~over);
+    }
+
+    /** Returns how many running ghosts are further along than the player.
+     * @return the number of ghosts ahead
+     */
+    int ahead() {
+        int count = 0;
+        for (long left = posed & ~over; left != 0; left &= left - 1) {
+            if (distance[Long.numberOfTrailingZeros(left)] > local) count++;
+        }
+        return count;
+    }
+
+    /** Returns a field of the player's own latest snapshot.
+     * @param field which field, such as {@link GhostSnapshots#DISTANCE}
+     * @return its value
+     */
+    int self(int field) {
+        return self[field];
+    }
+
+    /** Returns the snapshot of the ghosts last received.
+     * @return the snapshot; read it, but only the link may change it
+     */
+    GhostSnapshots ghosts() {
+        return snapshots;
+    }
+
+    /** Returns how many bytes of packets have been sent.
+     * @return bytes sent
+     */
+    long getBytesSent() {
+        return bytesSent;
+    }
+
+    /** Returns how many bytes of packets have been received.
+     * @return bytes received
+     */
+    long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /** Returns how many packets have been received.
+     * @return packets received
+     */
+    long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    /** Closes the socket. */
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException exc) {
+            // Closed either way.
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        int match = Integer.parseInt(args[0]);
+        int port = Integer.getInteger("sugardash.race.port", GhostRelay.PORT);
+        int runs = args.length - 1;
+        Replay[] replays = new Replay[runs];
+        SugarDash[] games = new SugarDash[runs];
+        int[] next = new int[runs];
+        int[] overFor = new int[runs];
+        for (int i = 0; i < runs; i++) {
+            replays[i] = Replay.load(new File(args[i + 1]));
+            games[i] = new SugarDash(800, 600);
+            games[i].race(port, match);
+            games[i].resetGame(replays[i].getSeed());
+        }
+        System.out.println("Racing " + runs + " recordings in match " + match + " on 127.0.0.1:" + port);
+
+        FramePacer pacer = new FramePacer(Game.TICKS_PER_SECOND);
+        while (true) {
+            pacer.await();
+            for (int i = 0; i < runs; i++) {
+                if (replays[i].isOver(games[i]) && ++overFor[i] > Game.TICKS_PER_SECOND) {
+                    overFor[i] = 0;
+                    next[i] = 0;
+                    games[i].resetGame(replays[i].getSeed());
+                }
+                next[i] = replays[i].feed(games[i], next[i]);
+                games[i].tick();
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package game;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * GhostRelay lets players race each other's ghosts. Every player in a match
+ * sends the relay a snapshot of where they are each tick, and the relay
+ * answers with a snapshot of everyone else in the match, delta-encoded by a
+ * <a href="#{@link}">{@link GhostSnapshots}</a> against the last answer that
+ * player acknowledged. The relay keeps no game of its own: a ghost is only
+ * ever the latest snapshot its player sent.
+ * <p>
+ * Snapshots go over UDP, since a late one is worth nothing once a newer one
+ * is on its way, and a single thread serves every player through one
+ * selector. Since the answers are sent as the snapshots come in, each player
+ * gets them at their own tick rate and nothing needs a timer. A player is
+ * identified by the address their packets come from, and leaves the match
+ * when they haven't been heard from for {@value #TIMEOUT_MS} ms. A match
+ * holds up to {@value GhostSnapshots#MAX_GHOSTS} players; anyone past that
+ * is ignored.
+ * </p>
+ * A packet from a player is the byte {@value #MAGIC}, the match number as an
+ * int, then their snapshot with one slot; an answer is the same byte then the
+ * match's snapshot, with the player's own slot left out.
+ * <p>
+ * Run with <code>java -cp bin game.GhostRelay [port]</code>; the relay only
+ * listens on the loopback address. The port defaults to {@value #PORT}.
+ * </p>
+ * @version %I% %G%
+ */
+class GhostRelay {
+
+    /** The port the relay listens on if none is given. */
+    static final int PORT = 7461;
+    /** Starts every packet, to tell them from stray datagrams. */
+    static final byte MAGIC = 'G';
+    /** How long a player can go quiet before they leave their match. */
+    static final long TIMEOUT_MS = 2000;
+
+    /** Match is the players racing each other, and the latest snapshot of each. */
+    private static final class Match {
+        private final int id;
+        private final int[] values = new int[GhostSnapshots.MAX_GHOSTS * GhostSnapshots.FIELDS];
+        /** Slots with a player, and slots with a snapshot to show */
+        private long taken, present;
+
+        Match(int id) {
+            this.id = id;
+        }
+    }
+
+    /** Peer is one player in a match, and the snapshots exchanged with them. */
+    private static final class Peer {
+        private final SocketAddress address;
+        private final Match match;
+        private final int slot;
+        private final GhostSnapshots link = new GhostSnapshots(GhostSnapshots.MAX_GHOSTS, 1);
+        private long heard;
+
+        Peer(SocketAddress address, Match match, int slot) {
+            this.address = address;
+            this.match = match;
+            this.slot = slot;
+        }
+    }
+
+    private final Selector selector;
+    private final DatagramChannel channel;
+    private final Map<SocketAddress, Peer> peers = new HashMap<>();
+    private final Map<Integer, Match> matches = new HashMap<>();
+    /** Packets are read into and written from these, on the relay thread only. */
+    private final ByteBuffer incoming = ByteBuffer.allocateDirect(GhostSnapshots.MAX_PACKET + 5);
+    private final ByteBuffer outgoing = ByteBuffer.allocateDirect(GhostSnapshots.MAX_PACKET + 1);
+    private long lastSweep;
+    private volatile long packetsIn, bytesIn, bytesOut, turnedAway;
+    private volatile int playing;
+
+    /**
+     * Opens the relay's socket.
+     * @param port the loopback port to listen on, or 0 for any free one
+     * @throws IOException if the port can't be opened
+     */
+    GhostRelay(int port) throws IOException {
+        selector = Selector.open();
+        channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress("127.0.0.1", port));
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    /** Returns the port the relay is listening on.
+     * @return the port number
+     * @throws IOException if the socket has been closed
+     */
+    int getPort() throws IOException {
+        return ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Answers snapshots until the thread is interrupted.
+     * @throws IOException if the socket fails
+     */
+    void serve() throws IOException {
+        long sweepMillis = TIMEOUT_MS / 4;
+        while (!Thread.currentThread().isInterrupted()) {
+            selector.select(sweepMillis);
+            Iterator<SelectionKey> ready = selector.selectedKeys().iterator();
+            while (ready.hasNext()) {
+                ready.next();
+                ready.remove();
+                receiveAll();
+            }
+            long now = System.nanoTime();
+            if (now - lastSweep > sweepMillis * 1_000_000) {
+                lastSweep = now;
+                sweep(now);
+            }
+        }
+    }
+
+    /** Answers every packet waiting on the socket. */
+    private void receiveAll() {
+        SocketAddress from;
+        while (true) {
+            incoming.clear();
+            try {
+                from = channel.receive(incoming);
+            } catch (IOException exc) {
+                // An answer bounced off a closed socket; the sweep catches whose it was.
+                return;
+            }
+            if (from == null) return;
+            incoming.flip();
+            packetsIn++;
+            bytesIn += incoming.remaining();
+            if (incoming.remaining() < 5 || incoming.get() != MAGIC) continue;
+            int matchId = incoming.getInt();
+            Peer peer = peers.get(from);
+            if (peer == null || peer.match.id != matchId) {
+                if (peer != null) leave(peer);
+                peer = join(from, matchId);
+                if (peer == null) continue;
+            }
+            if (peer.link.read(incoming)) {
+                answer(peer);
+            }
+        }
+    }
+
+    /** Takes a player's latest snapshot into their match, and sends them everyone else's. */
+    private void answer(Peer peer) {
+        Match match = peer.match;
+        long bit = 1L << peer.slot;
+        int at = peer.slot * GhostSnapshots.FIELDS;
+        for (int f = 0; f < GhostSnapshots.FIELDS; f++) {
+            match.values[at + f] = peer.link.value(0, f);
+        }
+        match.present |= bit;
+        peer.heard = System.nanoTime();
+
+        outgoing.clear();
+        outgoing.put(MAGIC);
+        peer.link.write(outgoing, match.values, match.present & ~bit);
+        outgoing.flip();
+        bytesOut += outgoing.remaining();
+        try {
+            channel.send(outgoing, peer.address);
+        } catch (IOException exc) {
+            leave(peer);
+        }
+    }
+
+    /** Puts a new player in the first free slot of a match, or returns null if it is full. */
+    private Peer join(SocketAddress from, int matchId) {
+        Match match = matches.computeIfAbsent(matchId, Match::new);
+        if (match.taken == -1L) {
+            turnedAway++;
+            return null;
+        }
+        int slot = Long.numberOfTrailingZeros(~match.taken);
+        match.taken |= 1L << slot;
+        Peer peer = new Peer(from, match, slot);
+        peers.put(from, peer);
+        playing = peers.size();
+        return peer;
+    }
+
+    /** Takes a player out of their match; everyone else is told with their next answer. */
+    private void leave(Peer peer) {
+        peers.remove(peer.address);
+        vacate(peer);
+        playing = peers.size();
+    }
+
+    /** Frees a player's slot, and the match once nobody is left in it. */
+    private void vacate(Peer peer) {
+        Match match = peer.match;
+        long bit = 1L << peer.slot;
+        match.taken &= ~bit;
+        match.present &= ~bit;
+        if (match.taken == 0) {
+            matches.remove(match.id);
+        }
+    }
+
+    /** Drops every player not heard from within the timeout. */
+    private void sweep(long now) {
+        Iterator<Peer> each = peers.values().iterator();
+        while (each.hasNext()) {
+            Peer peer = each.next();
+            if (now - peer.heard > TIMEOUT_MS * 1_000_000) {
+                each.remove();
+                vacate(peer);
+            }
+        }
+        playing = peers.size();
+    }
+
+    /** Returns how many players are in matches.
+     * @return the number of players heard from recently
+     */
+    int getPlaying() {
+        return playing;
+    }
+
+    /** Returns how many packets have come in, counting any that were ignored.
+     * @return the number of packets received
+     */
+    long getPacketsIn() {
+        return packetsIn;
+    }
+
+    /** Returns how many bytes of packets have come in.
+     * @return bytes received
+     */
+    long getBytesIn() {
+        return bytesIn;
+    }
+
+    /** Returns how many bytes of answers have gone out.
+     * @return bytes sent
+     */
+    long getBytesOut() {
+        return bytesOut;
+    }
+
+    /** Returns how many players were ignored because their match was full.
+     * @return packets turned away
+     */
+    long getTurnedAway() {
+        return turnedAway;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : PORT;
+        GhostRelay relay = new GhostRelay(port);
+        System.out.println("SugarDash ghost relay listening on 127.0.0.1:" + port + " (UDP)");
+        relay.serve();
+    }
+}
@@ -0,0 +1,240 @@
+package game;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * GhostSnapshots is one end of a ghost race connection: it turns the state
+ * of a few players into compact packets and back. A snapshot holds up to
+ * {@value #MAX_GHOSTS} slots, each a player's distance along the level, height,
+ * rotation, score and whether their run is over, all as whole numbers.
+ * <p>
+ * Each packet carries a sequence number and the number of the latest packet
+ * received from the other end, which acknowledges it. A snapshot is written as
+ * the difference from the newest one the other end has acknowledged, so only
+ * the slots and fields that changed since then are sent, each as a small
+ * variable-length number; a player standing still costs nothing. With nothing
+ * acknowledged, or only something too old to still be kept, the whole
+ * snapshot is sent. Lost packets just mean later ones are measured from an
+ * older snapshot, so nothing is ever resent, and packets arriving after a
+ * newer one are dropped.
+ * </p>
+ * The last {@value #HISTORY} snapshots sent and received are kept in rings
+ * made up front, so encoding and decoding allocate nothing.
+ * @version %I% %G%
+ */
+class GhostSnapshots {
+
+    /** Distance along the level, in quarter pixels. */
+    static final int DISTANCE = 0;
+    /** Height of the player's top edge, in quarter pixels. */
+    static final int Y = 1;
+    /** Rotation, in whole degrees from 0 to 359. */
+    static final int ROTATION = 2;
+    static final int SCORE = 3;
+    /** 1 once the run is over, otherwise 0. */
+    static final int OVER = 4;
+    static final int FIELDS = 5;
+
+    /** The most slots a snapshot holds; which are in use is one bit each of a long. */
+    static final int MAX_GHOSTS = 64;
+    /** How many snapshots each way are kept to measure from. A power of two. */
+    static final int HISTORY = 32;
+    /** The largest packet: the header, then every slot with every field at its longest. */
+    static final int MAX_PACKET = 10 + MAX_GHOSTS * (2 + FIELDS * 5);
+
+    /** Marks a slot that has been emptied since the snapshot measured from */
+    private static final int GONE = 0x80;
+
+    /** One snapshot and its sequence number, or -1 while it holds nothing usable. */
+    private static final class Frame {
+        private int seq = -1;
+        private long present;
+        private final int[] values;
+
+        Frame(int slots) {
+            values = new int[slots * FIELDS];
+        }
+    }
+
+    private final Frame[] sent = new Frame[HISTORY];
+    private final Frame[] received = new Frame[HISTORY];
+    private final int receiveSlots;
+    private int nextSeq;
+    /** The newest snapshot received, and the newest of ours the other end has */
+    private int lastReceived = -1;
+    private int acked = -1;
+    private Frame latest;
+
+    /**
+     * Creates one end of a connection.
+     * @param sendSlots how many slots the snapshots this end sends have
+     * @param receiveSlots how many slots the snapshots it receives have
+     */
+    GhostSnapshots(int sendSlots, int receiveSlots) {
+        this.receiveSlots = receiveSlots;
+        for (int i = 0; i < HISTORY; i++) {
+            sent[i] = new Frame(sendSlots);
+            received[i] = new Frame(receiveSlots);
+        }
+        latest = new Frame(receiveSlots);
+    }
+
+    /**
+     * Writes a snapshot as a packet.
+     * @param out where to write it; needs room for {@value #MAX_PACKET} bytes
+     * @param values each slot's fields, <code>FIELDS</code> to a slot
+     * @param present which slots are in use, one bit per slot
+     */
+    void write(ByteBuffer out, int[] values, long present) {
+        int seq = nextSeq++;
+        Frame base = acked >= 0 && seq - acked < HISTORY ? sent[acked & (HISTORY - 1)] : null;
+        if (base != null && base.seq != acked) {
+            base = null;
+        }
+        Frame frame = sent[seq & (HISTORY - 1)];
+        frame.seq = seq;
+        frame.present = present;
+
+        out.putInt(seq);
+        out.putInt(lastReceived);
+        out.put((byte) (base == null ? 0 : seq - acked));
+        int countAt = out.position();
+        out.put((byte) 0);
+
+        long basePresent = base == null ? 0 : base.present;
+        int count = 0;
+        for (long left = present | basePresent; left != 0; left &= left - 1) {
+            int slot = Long.numberOfTrailingZeros(left);
+            long bit = 1L << slot;
+            if ((present & bit) == 0) {
+                out.put((byte) slot);
+                out.put((byte) GONE);
+                count++;
+                continue;
+            }
+            boolean known = (basePresent & bit) != 0;
+            int at = slot * FIELDS;
+            int changed = 0;
+            for (int f = 0; f < FIELDS; f++) {
+                frame.values[at + f] = values[at + f];
+                if (values[at + f] != (known ? base.values[at + f] : 0)) changed |= 1 << f;
+            }
+            if (changed == 0 && known) continue;
+            out.put((byte) slot);
+            out.put((byte) changed);
+            for (int f = 0; f < FIELDS; f++) {
+                if ((changed & (1 << f)) != 0) {
+                    putVarInt(out, zigzag(values[at + f] - (known ? base.values[at + f] : 0)));
+                }
+            }
+            count++;
+        }
+        out.put(countAt, (byte) count);
+    }
+
+    /**
+     * Reads a packet, making its snapshot the latest if it is newer than the
+     * last one read.
+     * @param in the packet, from just after anything the caller put in front
+     * @return false if the packet was stale, measured from a snapshot no
+     *         longer kept, or not a snapshot at all
+     */
+    boolean read(ByteBuffer in) {
+        try {
+            int seq = in.getInt();
+            int ack = in.getInt();
+            int age = in.get() & 0xff;
+            int count = in.get() & 0xff;
+            if (seq <= lastReceived || age >= HISTORY) return false;
+            Frame base = null;
+            if (age != 0) {
+                base = received[(seq - age) & (HISTORY - 1)];
+                if (base.seq != seq - age) return false;
+            }
+
+            Frame frame = received[seq & (HISTORY - 1)];
+            frame.seq = -1;
+            long present = 0;
+            if (base != null) {
+                present = base.present;
+                System.arraycopy(base.values, 0, frame.values, 0, frame.values.length);
+            }
+            for (int i = 0; i < count; i++) {
+                int slot = in.get() & 0xff;
+                int changed = in.get() & 0xff;
+                if (slot >= receiveSlots) return false;
+                long bit = 1L << slot;
+                int at = slot * FIELDS;
+                if (changed == GONE) {
+                    present &= ~bit;
+                    continue;
+                }
+                if ((present & bit) == 0) {
+                    for (int f = 0; f < FIELDS; f++) frame.values[at + f] = 0;
+                    present |= bit;
+                }
+                for (int f = 0; f < FIELDS; f++) {
+                    if ((changed & (1 << f)) != 0) {
+                        frame.values[at + f] += unzigzag(getVarInt(in));
+                    }
+                }
+            }
+            frame.present = present;
+            frame.seq = seq;
+            latest = frame;
+            lastReceived = seq;
+            if (ack > acked && ack < nextSeq) {
+                acked = ack;
+            }
+            return true;
+        } catch (BufferUnderflowException exc) {
+            return false;
+        }
+    }
+
+    /** Returns which slots of the latest snapshot received are in use.
+     * @return one bit per slot
+     */
+    long present() {
+        return latest.present;
+    }
+
+    /**
+     * Returns a field of the latest snapshot received.
+     * @param slot the slot
+     * @param field which field, such as {@link #DISTANCE}
+     * @return its value
+     */
+    int value(int slot, int field) {
+        return latest.values[slot * FIELDS + field];
+    }
+
+    /** Maps small negative and positive numbers alike to small non-negative ones. */
+    private static int zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static int unzigzag(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    /** Writes a number seven bits at a time, low bits first, as in a replay. */
+    private static void putVarInt(ByteBuffer out, int n) {
+        while ((n & ~0x7f) != 0) {
+            out.put((byte) ((n & 0x7f) | 0x80));
+            n >>>= 7;
+        }
+        out.put((byte) n);
+    }
+
+    private static int getVarInt(ByteBuffer in) {
+        int n = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            n |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return n;
+        }
+        throw new BufferUnderflowException();
+    }
+}
@@ -0,0 +1,92 @@
+package game;
+
+/**
+ * InputQueue carries input from the thread that reads the keyboard to the
+ * thread that runs the game, without either ever waiting on a lock. Exactly
+ * one thread may call {@link #offer(int, long)} and exactly one other may
+ * call {@link #poll()}; each input carries the <code>System.nanoTime()</code>
+ * it was pressed at, so the game can tell how long it took to show.
+ * <p>
+ * It is a ring of {@value #CAPACITY} slots. The producer fills a slot before
+ * publishing the new tail, and the consumer reads a slot before publishing
+ * the new head, so neither sees a half-written input. When the ring is full,
+ * as it might be if the game thread stalls, new input is dropped and counted
+ * rather than making the keyboard thread wait.
+ * </p>
+ * @version %I% %G%
+ */
+class InputQueue {
+
+    static final int CAPACITY = 64;
+    private static final int MASK = CAPACITY - 1;
+
+    private final int[] inputs = new int[CAPACITY];
+    private final long[] stamps = new long[CAPACITY];
+
+    /** The next slot to read; only the consumer writes it. */
+    private volatile long head;
+    /** The next slot to fill; only the producer writes it. */
+    private volatile long tail;
+    private volatile long dropped;
+
+    /** What the last {@link #poll()} took, for the consumer to read. */
+    private int input;
+    private long stamp;
+
+    /**
+     * Adds an input. Only ever called from the producer thread.
+     * @param bits the input bits
+     * @param pressedAt when it was pressed, from <code>System.nanoTime()</code>
+     * @return false if the queue was full and the input was dropped
+     */
+    boolean offer(int bits, long pressedAt) {
+        long t = tail;
+        if (t - head == CAPACITY) {
+            dropped++;
+            return false;
+        }
+        int slot = (int) (t & MASK);
+        inputs[slot] = bits;
+        stamps[slot] = pressedAt;
+        tail = t + 1;
+        return true;
+    }
+
+    /**
+     * Takes the oldest input, if there is one; read it with {@link #input()}
+     * and {@link #stamp()}. Only ever called from the consumer thread.
+     * @return false if the queue was empty
+     */
+    boolean poll() {
+        long h = head;
+        if (h == tail) {
+            return false;
+        }
+        int slot = (int) (h & MASK);
+        input = inputs[slot];
+        stamp = stamps[slot];
+        head = h + 1;
+        return true;
+    }
+
+    /** Returns the bits of the input the last {@link #poll()} took.
+     * @return the input bits
+     */
+    int input() {
+        return input;
+    }
+
+    /** Returns when the input the last {@link #poll()} took was pressed.
+     * @return a <code>System.nanoTime()</code> value
+     */
+    long stamp() {
+        return stamp;
+    }
+
+    /** Returns how many inputs were dropped because the queue was full.
+     * @return the number dropped
+     */
+    long getDropped() {
+        return dropped;
+    }
+}
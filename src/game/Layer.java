@@ -0,0 +1,77 @@
+package game;
+
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+import java.util.function.Consumer;
+
+/**
+ * Layer is a full picture of something that rarely changes, like the sky
+ * and floor, drawn once and then copied onto the canvas each frame. On
+ * screen it lives in a VolatileImage in video memory; since that memory can
+ * be taken away at any time, the picture is drawn again whenever it is lost.
+ * Headless games get an ordinary image instead.
+ * @version %I% %G%
+ */
+class Layer {
+
+    private final Component owner;
+    private final int width, height;
+    private final Consumer<Graphics> painter;
+    private VolatileImage accelerated;
+    private BufferedImage plain;
+
+    /**
+     * Creates a layer; nothing is drawn until it is first needed.
+     * @param owner the component the layer is drawn onto
+     * @param width the width of the layer, in pixels
+     * @param height the height of the layer, in pixels
+     * @param painter draws the layer's contents
+     */
+    Layer(Component owner, int width, int height, Consumer<Graphics> painter) {
+        this.owner = owner;
+        this.width = width;
+        this.height = height;
+        this.painter = painter;
+    }
+
+    /**
+     * Copies the layer onto the canvas at (x, y), redrawing it first if it has
+     * never been drawn or its video memory was lost.
+     * @param brush the brush that is being used to draw on the game's canvas
+     * @param x where the layer's left edge goes, in pixels
+     * @param y where the layer's top edge goes, in pixels
+     */
+    void draw(Graphics brush, int x, int y) {
+        GraphicsConfiguration gc = owner.getGraphicsConfiguration();
+        if (gc == null) {
+            if (plain == null) {
+                plain = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                repaint(plain.getGraphics());
+            }
+            brush.drawImage(plain, x, y, null);
+            return;
+        }
+        do {
+            int state = accelerated == null ? VolatileImage.IMAGE_INCOMPATIBLE : accelerated.validate(gc);
+            if (state == VolatileImage.IMAGE_INCOMPATIBLE) {
+                accelerated = gc.createCompatibleVolatileImage(width, height);
+                state = VolatileImage.IMAGE_RESTORED;
+            }
+            if (state == VolatileImage.IMAGE_RESTORED) {
+                repaint(accelerated.getGraphics());
+            }
+            brush.drawImage(accelerated, x, y, null);
+        } while (accelerated.contentsLost());
+    }
+
+    private void repaint(Graphics brush) {
+        try {
+            painter.accept(brush);
+        } finally {
+            brush.dispose();
+        }
+    }
+}
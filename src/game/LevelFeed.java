@@ -0,0 +1,191 @@
+package game;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * LevelFeed hands a run's level to the game a chunk at a time, made ahead by
+ * a <a href="#{@link}">{@link LevelGenerator}</a>. In a window, chunks are
+ * made on a background thread up to {@value #AHEAD} ahead of the one being
+ * played, so the game thread never stops to lay out obstacles. Headless games
+ * (simulations, the server) run far faster than real time or by the
+ * thousand, so they make each chunk on the game thread as it is needed
+ * instead; either way a seed makes the same level.
+ * <p>
+ * A fixed set of chunks goes around two rings that each have exactly one
+ * thread putting in and one taking out, like an
+ * <a href="#{@link}">{@link InputQueue}</a>, so neither thread ever takes a
+ * lock: made chunks go from the generator to the game, and chunks the game
+ * has scrolled past go back to be made again. The game may hold on to a few
+ * chunks after playing them, so it can wind back into them; there are enough
+ * chunks for those as well as the ones made ahead. Memory stays the same
+ * however long a run lasts.
+ * </p>
+ * When a run restarts, the generator is told through a run number. Chunks
+ * already made for the old run are thrown away as the game comes to them.
+ * @version %I% %G%
+ */
+class LevelFeed {
+
+    /** How many chunks the background thread makes ahead of the one being played. */
+    static final int AHEAD = 4;
+    /** The longest the game thread waits for a chunk before looking again, in case a wake-up was missed */
+    private static final long WAIT_NANOS = 100_000;
+
+    /**
+     * Ring is a queue of chunks with one thread adding and one taking. A slot
+     * is written before the tail that publishes it, and read before the head
+     * that frees it.
+     */
+    private static final class Ring {
+        private final LevelGenerator.Chunk[] slots;
+        private final int mask;
+        private volatile long head, tail;
+
+        /** Creates a ring with room for at least <code>chunks</code> chunks. */
+        Ring(int chunks) {
+            slots = new LevelGenerator.Chunk[Integer.highestOneBit(chunks - 1) << 1];
+            mask = slots.length - 1;
+        }
+
+        /** Adds a chunk; there is always room, since every chunk fits at once. */
+        void offer(LevelGenerator.Chunk chunk) {
+            long t = tail;
+            slots[(int) (t & mask)] = chunk;
+            tail = t + 1;
+        }
+
+        /** Returns whether there is no chunk to take. */
+        boolean isEmpty() {
+            return head == tail;
+        }
+
+        /** Takes the oldest chunk, or returns null if there is none. */
+        LevelGenerator.Chunk poll() {
+            long h = head;
+            if (h == tail) return null;
+            int slot = (int) (h & mask);
+            LevelGenerator.Chunk chunk = slots[slot];
+            slots[slot] = null;
+            head = h + 1;
+            return chunk;
+        }
+    }
+
+    private final LevelGenerator generator;
+    /** Chunks made and waiting to be played, and chunks free to be made */
+    private final Ring made, free;
+    /** The thread making chunks ahead, or null if they are made when needed */
+    private final Thread worker;
+    /** The game thread while it waits for a chunk, to be woken once one is made */
+    private volatile Thread waiting;
+
+    /** The current run, and what it was started with; the seed and tuning are written first. */
+    private volatile long run;
+    private volatile long seed;
+    private volatile Difficulty difficulty = Difficulty.DEFAULT;
+
+    /**
+     * Creates a feed and its chunks.
+     * @param generator what lays out the chunks; only the feed may use it from now on
+     * @param kept how many chunks the game holds on to after playing them,
+     *             besides the one being played
+     * @param ahead whether to make chunks ahead on a background thread
+     */
+    LevelFeed(LevelGenerator generator, int kept, boolean ahead) {
+        this.generator = generator;
+        int chunks = AHEAD + 2 + kept;
+        made = new Ring(chunks);
+        free = new Ring(chunks);
+        for (int i = 0; i < chunks; i++) {
+            free.offer(new LevelGenerator.Chunk());
+        }
+        if (ahead) {
+            worker = new Thread(this::makeAhead, "level-generator");
+            worker.setDaemon(true);
+            worker.start();
+        } else {
+            worker = null;
+        }
+    }
+
+    /**
+     * Starts a new level. Called from the game thread, like every method here.
+     * @param runSeed the run's seed
+     * @param tuning how fast the obstacles go, and how often powerups come
+     */
+    void restart(long runSeed, Difficulty tuning) {
+        seed = runSeed;
+        difficulty = tuning;
+        run++;
+        if (worker == null) {
+            generator.restart(runSeed, tuning);
+        } else {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * Returns the next chunk of the level. If the background thread hasn't
+     * made it yet, which only happens just after a restart, this parks until
+     * the background thread says one is made.
+     * @return the chunk, to be given back with {@link #discard(LevelGenerator.Chunk)}
+     */
+    LevelGenerator.Chunk next() {
+        if (worker == null) {
+            LevelGenerator.Chunk chunk = free.poll();
+            generator.fill(chunk);
+            return chunk;
+        }
+        while (true) {
+            LevelGenerator.Chunk chunk = made.poll();
+            if (chunk == null) {
+                waiting = Thread.currentThread();
+                LockSupport.unpark(worker);
+                // Look once more, in case it came before the worker could see we were waiting.
+                if (made.isEmpty()) {
+                    LockSupport.parkNanos(this, WAIT_NANOS);
+                }
+                waiting = null;
+            } else if (chunk.run != run) {
+                discard(chunk);
+            } else {
+                return chunk;
+            }
+        }
+    }
+
+    /**
+     * Gives back a chunk that has been scrolled past, to be made again.
+     * @param chunk a chunk from {@link #next()}
+     */
+    void discard(LevelGenerator.Chunk chunk) {
+        free.offer(chunk);
+        if (worker != null) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /** Makes chunks whenever one is free, for as long as the game runs. Runs on the worker. */
+    private void makeAhead() {
+        long making = -1;
+        while (true) {
+            long current = run;
+            if (current != making) {
+                making = current;
+                generator.restart(seed, difficulty);
+            }
+            LevelGenerator.Chunk chunk = free.poll();
+            if (chunk == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            generator.fill(chunk);
+            chunk.run = making;
+            made.offer(chunk);
+            Thread game = waiting;
+            if (game != null) {
+                LockSupport.unpark(game);
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package game;
+
+import java.util.Random;
+
+/**
+ * LevelGenerator lays out a run's obstacles and powerups, a fixed-width
+ * {@link Chunk} at a time, from nothing but the run's seed and difficulty.
+ * Positions are in level coordinates: how far the obstacles will have
+ * scrolled when something reaches the right edge, plus the canvas width.
+ * The first cup of a run is at {@value #SPAWN_X}, the right edge when it
+ * starts.
+ * <p>
+ * Obstacles come in patterns: a single cup, or a few cups close together to
+ * be cleared in one jump. Harder patterns unlock as the run goes on. Gaps are
+ * worked out from the player's jump arc at the speed the obstacles will be
+ * going when they reach the player, which is known ahead of time because the
+ * speed only depends on the tick. Patterns are spaced apart just far enough
+ * for the player to land and jump again, but never more than a canvas apart,
+ * and a cluster only stays together if one jump can clear all of it;
+ * otherwise it is split up with full gaps.
+ * Each cup has a chance of bringing a powerup in from the right edge as the
+ * player passes it.
+ * </p>
+ * Chunks are made one after another, each carrying on from the last, so the
+ * same seed always makes the same level however far ahead it is made.
+ * @version %I% %G%
+ */
+class LevelGenerator {
+
+    /** How much of the level each chunk covers, in pixels. */
+    static final double CHUNK_WIDTH = 2400;
+    /** Where the first cup of a run is, which is the right edge as it starts. */
+    static final double SPAWN_X = 800;
+
+    /** Obstacle sizes as {top, bottom, height}: a coffee cup, an espresso, a latte and a mug. */
+    static final int[][] SIZES = {
+        {50, 30, 50}, {40, 26, 36}, {60, 40, 80}, {90, 70, 40}
+    };
+    private static final int COFFEE = 0, ESPRESSO = 1, LATTE = 2, MUG = 3;
+
+    /** Each pattern, and the tick of the run it can first appear on. */
+    private static final int[][] PATTERNS = {
+        {COFFEE}, {ESPRESSO}, {MUG}, {ESPRESSO, ESPRESSO}, {LATTE},
+        {COFFEE, ESPRESSO}, {ESPRESSO, COFFEE}, {COFFEE, COFFEE}, {ESPRESSO, ESPRESSO, ESPRESSO}
+    };
+    private static final int[] UNLOCK_TICKS = {
+        0, 0, 1000, 1500, 2000, 2500, 2500, 3000, 4000
+    };
+
+    /** Space between the cups of a cluster, in pixels. */
+    private static final int CLUSTER_GAP = 30;
+    /** Ticks on the ground between landing one jump and starting the next. */
+    private static final double RECOVERY_TICKS = 15;
+    /** The share of a jump's time over a cluster that clearing it may need. */
+    private static final double CLUSTER_SLACK = 0.8;
+    /** The most random space added between patterns, in pixels. */
+    private static final int EXTRA_GAP = 300;
+    private static final int MIN_EXTRA_GAP = 100;
+
+    /** The most obstacles, or powerups, a chunk can hold: cups can't be closer than a cluster. */
+    static final int MAX_PLACEMENTS = (int) (CHUNK_WIDTH / (CLUSTER_GAP + SIZES[ESPRESSO][0])) + 1;
+
+    /**
+     * Chunk is one stretch of level: where each obstacle and powerup in it
+     * is, in order. The generator fills it in before anyone else sees it,
+     * and after that it is only read until it is given back to be filled
+     * again, so chunks can be made on one thread and played on another.
+     */
+    static final class Chunk {
+        private final double[] obstacleX = new double[MAX_PLACEMENTS];
+        private final int[] obstacleSize = new int[MAX_PLACEMENTS];
+        private final double[] powerUpX = new double[MAX_PLACEMENTS];
+        private int obstacles, powerUps;
+        private double end;
+        /** Which run it was made for; see {@link LevelFeed} */
+        long run;
+
+        /** Returns how many obstacles are in the chunk.
+         * @return the number of obstacles
+         */
+        int obstacles() {
+            return obstacles;
+        }
+
+        /** Returns where an obstacle's left edge is.
+         * @param i which obstacle, in order
+         * @return its x-position in level coordinates
+         */
+        double obstacleX(int i) {
+            return obstacleX[i];
+        }
+
+        /** Returns an obstacle's size.
+         * @param i which obstacle, in order
+         * @return an index into {@link LevelGenerator#SIZES}
+         */
+        int obstacleSize(int i) {
+            return obstacleSize[i];
+        }
+
+        /** Returns how many powerups are in the chunk.
+         * @return the number of powerups
+         */
+        int powerUps() {
+            return powerUps;
+        }
+
+        /** Returns where a powerup comes in.
+         * @param i which powerup, in order
+         * @return its x-position in level coordinates
+         */
+        double powerUpX(int i) {
+            return powerUpX[i];
+        }
+
+        /** Returns where the chunk ends; everything in it is left of this.
+         * @return the x-value, in level coordinates
+         */
+        double end() {
+            return end;
+        }
+    }
+
+    /**
+     * Clock turns a distance scrolled into the tick it is reached on. Asked
+     * about distances that only grow, it just runs forward.
+     */
+    private final class Clock {
+        private int tick;
+        /** How far obstacles have scrolled by the start of <code>tick</code> */
+        private double scrolled;
+
+        void reset() {
+            tick = 0;
+            scrolled = 0;
+        }
+
+        /** Returns the tick on which the obstacles scroll past a distance. */
+        int tickAt(double distance) {
+            while (scrolled + difficulty.speed(tick) < distance) {
+                scrolled += difficulty.speed(tick);
+                tick++;
+            }
+            return tick;
+        }
+    }
+
+    private final double playerX;
+    private final int playerSide;
+    private final Random random = new Random();
+    private Difficulty difficulty = Difficulty.DEFAULT;
+    private final Clock arrivals = new Clock(), spawns = new Clock();
+
+    /** The pattern being laid out, and which of its cups comes next */
+    private int pattern, step;
+    /** Space added before the next pattern starts */
+    private int extraGap;
+    /** The left edge of the first cup and right edge of the last in the latest group, and its height */
+    private double groupFront, groupBack;
+    private int groupHeight;
+    private boolean started;
+    /** The cup laid out but not yet put in a chunk, because it is past the chunk's end */
+    private double nextX;
+    private int nextSize;
+    private boolean hasNext;
+    /** Powerups laid out but not yet put in a chunk, in order */
+    private final double[] nextPowerUps = new double[MAX_PLACEMENTS];
+    private int nextPowerUpCount;
+    private double chunkEnd;
+
+    /**
+     * Creates a generator for a player at a position.
+     * @param playerX the x-position of the player's left edge, where cups are scored
+     * @param playerSide the player's side length
+     */
+    LevelGenerator(double playerX, int playerSide) {
+        this.playerX = playerX;
+        this.playerSide = playerSide;
+    }
+
+    /**
+     * Starts a new level. The next chunk filled is its first.
+     * @param seed the run's seed
+     * @param tuning how fast the obstacles go, and how often powerups come
+     */
+    void restart(long seed, Difficulty tuning) {
+        random.setSeed(seed);
+        difficulty = tuning;
+        arrivals.reset();
+        spawns.reset();
+        pattern = 0;
+        step = 0;
+        extraGap = 0;
+        started = false;
+        hasNext = false;
+        nextPowerUpCount = 0;
+        chunkEnd = 0;
+    }
+
+    /**
+     * Lays out the next chunk of the level.
+     * @param chunk the chunk to fill; whatever was in it is replaced
+     */
+    void fill(Chunk chunk) {
+        chunkEnd += CHUNK_WIDTH;
+        chunk.end = chunkEnd;
+        chunk.obstacles = 0;
+        chunk.powerUps = 0;
+        while (true) {
+            if (!hasNext) {
+                layOutNext();
+            }
+            if (nextX >= chunkEnd) break;
+            chunk.obstacleX[chunk.obstacles] = nextX;
+            chunk.obstacleSize[chunk.obstacles] = nextSize;
+            chunk.obstacles++;
+            hasNext = false;
+        }
+        int taken = 0;
+        while (taken < nextPowerUpCount && nextPowerUps[taken] < chunkEnd) {
+            chunk.powerUpX[chunk.powerUps++] = nextPowerUps[taken++];
+        }
+        System.arraycopy(nextPowerUps, taken, nextPowerUps, 0, nextPowerUpCount - taken);
+        nextPowerUpCount -= taken;
+    }
+
+    /** Works out where the next cup goes, picking a new pattern if the last is done. */
+    private void layOutNext() {
+        if (step == PATTERNS[pattern].length) {
+            int tick = spawns.tickAt(nextX - SPAWN_X);
+            int unlocked = 0;
+            while (unlocked < PATTERNS.length && UNLOCK_TICKS[unlocked] <= tick) unlocked++;
+            pattern = random.nextInt(unlocked);
+            step = 0;
+            extraGap = MIN_EXTRA_GAP + random.nextInt(EXTRA_GAP - MIN_EXTRA_GAP + 1);
+        }
+
+        int size = PATTERNS[pattern][step];
+        int top = SIZES[size][0];
+        if (!started) {
+            nextX = SPAWN_X;
+            started = true;
+            startGroup(size);
+        } else {
+            double speed = difficulty.speed(arrivals.tickAt(groupBack + CLUSTER_GAP - playerX));
+            if (step > 0 && fitsOneJump(size, speed)) {
+                nextX = groupBack + CLUSTER_GAP;
+                groupHeight = Math.max(groupHeight, SIZES[size][2]);
+            } else {
+                double center = (groupFront + groupBack) / 2;
+                double spacing = speed * (Player.JUMPFRAMES + RECOVERY_TICKS) + (step == 0 ? extraGap : 0);
+                nextX = Math.max(groupBack + CLUSTER_GAP, center + spacing - top / 2.0);
+                // Never leave the canvas empty: the next cup is on before the last is off.
+                nextX = Math.min(nextX, groupBack + SPAWN_X);
+                startGroup(size);
+            }
+        }
+        groupBack = nextX + top;
+        nextSize = size;
+        hasNext = true;
+        step++;
+
+        // A powerup comes in at the right edge as the player passes the cup.
+        if (random.nextDouble() < difficulty.powerUpChance) {
+            nextPowerUps[nextPowerUpCount++] = nextX + SPAWN_X - playerX;
+        }
+    }
+
+    /** Makes the cup at <code>nextX</code> the first of a new group. */
+    private void startGroup(int size) {
+        groupFront = nextX;
+        groupHeight = SIZES[size][2];
+    }
+
+    /**
+     * Checks whether a cup of a size, right after the latest group, could be
+     * cleared in the same jump as the group.
+     */
+    private boolean fitsOneJump(int size, double speed) {
+        double span = groupBack + CLUSTER_GAP + SIZES[size][0] - groupFront;
+        int height = Math.max(groupHeight, SIZES[size][2]);
+        return span + playerSide <= speed * ticksAbove(height) * CLUSTER_SLACK;
+    }
+
+    /** Returns how many ticks a jump keeps the bottom of the player above a height. */
+    private static double ticksAbove(int height) {
+        double squared = Player.JUMPVEL * Player.JUMPVEL - 2 * Player.GRAVITY * height;
+        return squared <= 0 ? 0 : 2 * Math.sqrt(squared) / Player.GRAVITY;
+    }
+}
@@ -0,0 +1,363 @@
+package game;
+
+import java.awt.Color;
+
+/**
+ * ObstacleField sends the obstacles of the SugarDash game across the canvas,
+ * where a <a href="#{@link}">{@link LevelGenerator}</a> has laid them out.
+ * Every obstacle it will ever use is an entity in the game's
+ * <a href="#{@link}">{@link Entities}</a>, made up front, several of each
+ * size, and an obstacle that leaves the left edge goes back in the pool to be
+ * spawned again; nothing is allocated once the game is running, however dense
+ * the obstacles get. Each obstacle is a white, upside-down isosceles
+ * trapezoid, and those of a size share one outline and its pictures.
+ * <p>
+ * The level comes in chunks from a <a href="#{@link}">{@link LevelFeed}</a>.
+ * The field keeps count of how far the obstacles have scrolled, spawns each
+ * obstacle as its place in the level reaches the right edge, and moves on
+ * to the next chunk once all of it has come on. The last {@value #KEPT}
+ * chunks played are held on to before being given back, so winding a run
+ * back only has to pick one of them. Powerups in the level are passed on to
+ * the game, which owns the powerup.
+ * </p>
+ * An obstacle on the canvas has a style and is a collider on the field's
+ * layer, so the entities draw it and find what runs into it; one waiting in
+ * the pool has neither. The entities move the obstacles at the speed the field
+ * sets; the field spawns them, takes them back and scores them. The field can
+ * be saved and loaded again, along with the entities, for winding a run back.
+ * @version %I% %G%
+ */
+class ObstacleField {
+
+    private static final int[][] SIZES = LevelGenerator.SIZES;
+    /** How many of each size the pool holds; more than can ever be on the canvas at once. */
+    private static final int PER_SIZE = 6;
+    /** Where obstacles appear, just past the right edge. */
+    private static final double SPAWN_X = LevelGenerator.SPAWN_X;
+    /** How many obstacles the field holds; at most 64, so a set of them fits in a long. */
+    static final int POOL_SIZE = SIZES.length * PER_SIZE;
+
+    private static final Color COLOR = new Color(230, 230, 230);
+    /**
+     * How many chunks played are held on to, counting the one coming on: a
+     * power of two, and enough for the 1024 ticks a
+     * <a href="#{@link}">{@link RewindBuffer}</a> keeps at up to 16 pixels a tick.
+     */
+    private static final int KEPT = 8;
+
+    /** The entities the obstacles are, and each one in the pool */
+    private final Entities world;
+    private final int[] pool;
+    /** Each obstacle's width at its widest, which is its top */
+    private final int[] topSize;
+    /**
+     * A bit per obstacle in the pool: set for those on the canvas, and for
+     * those passed by the player since they spawned
+     */
+    private long onCanvas, scored;
+    /** The collision layer obstacles on the canvas are on */
+    private final int layer;
+    private final LevelFeed level;
+    private Difficulty difficulty = Difficulty.DEFAULT;
+
+    /** The chunk of level coming on, and its next obstacle and powerup */
+    private LevelGenerator.Chunk chunk;
+    private int nextObstacle, nextPowerUp;
+    /** The run's seed, and how many chunks of its level came before this one */
+    private long seed;
+    private int chunkNumber;
+    /** The chunks held on to, each in the slot its number modulo {@link #KEPT} picks, and the newest one's number */
+    private final LevelGenerator.Chunk[] played = new LevelGenerator.Chunk[KEPT];
+    private int taken;
+    /** How far the obstacles have scrolled this run, in pixels */
+    private double scrolled;
+    /** Powerups that have reached the right edge since the game last asked */
+    private int powerUpsDue;
+
+    /**
+     * Creates a field and adds its pool of obstacles to the entities, all
+     * standing on the floor, off the canvas.
+     * @param world the entities the obstacles are added to
+     * @param layer the collision layer for obstacles on the canvas
+     * @param floorY the y-value of the floor
+     * @param playerX the x-position of the player's left edge
+     * @param playerSide the player's side length
+     * @param ahead whether to lay out the level ahead on a background thread
+     */
+    ObstacleField(Entities world, int layer, int floorY, double playerX, int playerSide, boolean ahead) {
+        this.world = world;
+        this.layer = layer;
+        level = new LevelFeed(new LevelGenerator(playerX, playerSide), KEPT - 1, ahead);
+        pool = new int[POOL_SIZE];
+        topSize = new int[POOL_SIZE];
+        for (int s = 0; s < SIZES.length; s++) {
+            int[] size = SIZES[s];
+            int shape = world.addShape(new Entities.Shape(outline(size[0], size[1], size[2])));
+            for (int i = s * PER_SIZE; i < (s + 1) * PER_SIZE; i++) {
+                pool[i] = world.add(SPAWN_X, floorY - size[2]);
+                world.setShape(pool[i], shape);
+                topSize[i] = size[0];
+            }
+        }
+    }
+
+    /**
+     * Returns the outline of an obstacle: an upside-down isosceles trapezoid.
+     * @param top the width of its top, in pixels
+     * @param bottom the width of its bottom, in pixels
+     * @param height its height, in pixels
+     * @return the corners, clockwise from the top left
+     */
+    static Point[] outline(int top, int bottom, int height) {
+        return new Point[]{
+            new Point(0, 0),
+            new Point(top, 0),
+            new Point(top - (top - bottom) / 2.0, height),
+            new Point((top - bottom) / 2.0, height)
+        };
+    }
+
+    /**
+     * Changes how fast the obstacles move, and the level laid out for them.
+     * The level is laid out when a run starts, so this takes effect then.
+     * @param tuning the new difficulty
+     */
+    void setDifficulty(Difficulty tuning) {
+        difficulty = tuning;
+    }
+
+    /**
+     * Returns how fast the obstacles, and the powerup, move at a point in the run.
+     * @param moves ticks into the run
+     * @return the speed, in pixels per tick
+     */
+    double speed(int moves) {
+        return difficulty.speed(moves);
+    }
+
+    /**
+     * Clears the canvas and starts a new level, as a run starts. Its first
+     * cup comes on at the right edge straight away.
+     * @param seed the run's seed, which decides the level
+     */
+    void reset(long seed) {
+        for (int i = 0; i < pool.length; i++) {
+            despawn(i);
+        }
+        this.seed = seed;
+        restartLevel();
+        moveTo(0);
+        nextObstacle = 0;
+        nextPowerUp = 0;
+        scrolled = 0;
+        powerUpsDue = 0;
+        comeOn();
+    }
+
+    /**
+     * Sets how fast every obstacle on the canvas moves this tick. Call before
+     * the entities move.
+     * @param moves ticks into the run, which set the speed
+     */
+    void setPace(int moves) {
+        double speed = difficulty.speed(moves);
+        for (long bits = onCanvas; bits != 0; bits &= bits - 1) {
+            world.setVelocity(pool[Long.numberOfTrailingZeros(bits)], -speed, 0);
+        }
+    }
+
+    /**
+     * Takes back every obstacle that has left the left edge, and spawns
+     * whatever in the level has reached the right edge. Call after the
+     * entities move.
+     * @param moves ticks into the run, which set the speed
+     */
+    void update(int moves) {
+        for (long bits = onCanvas; bits != 0; bits &= bits - 1) {
+            int i = Long.numberOfTrailingZeros(bits);
+            if (world.getX(pool[i]) <= -topSize[i]) {
+                despawn(i);
+            }
+        }
+        scrolled += difficulty.speed(moves);
+        comeOn();
+    }
+
+    /**
+     * Returns how many powerups have reached the right edge since the last
+     * call, and forgets them.
+     * @return the number of powerups due
+     */
+    int takePowerUps() {
+        int due = powerUpsDue;
+        powerUpsDue = 0;
+        return due;
+    }
+
+    /**
+     * Counts the obstacles that have just passed a point, marking them scored.
+     * @param x the x-value an obstacle's left edge must be left of to count
+     * @return how many obstacles passed it since the last call
+     */
+    int scorePassed(double x) {
+        int passed = 0;
+        for (long bits = onCanvas & ~scored; bits != 0; bits &= bits - 1) {
+            int i = Long.numberOfTrailingZeros(bits);
+            if (world.getX(pool[i]) < x) {
+                scored |= 1L << i;
+                passed++;
+            }
+        }
+        return passed;
+    }
+
+    /**
+     * Writes how far the run has scrolled, where it is in the level, and
+     * which obstacles are on the canvas and which have been scored, as one
+     * bit each. Where they are is the entities' to save.
+     * @param state where the fields are written
+     */
+    void save(StateVector state) {
+        state.put(scrolled);
+        state.put(chunkNumber);
+        state.put(nextObstacle);
+        state.put(nextPowerUp);
+        state.put(powerUpsDue);
+        state.put(onCanvas);
+        state.put(scored);
+    }
+
+    /**
+     * Puts the field back as {@link #save(StateVector)} wrote it earlier in
+     * the same run. Its chunk is nearly always one of those held on to, and
+     * the chunks after it are played again from there. If it was given back
+     * already, which only a difficulty faster than 16 pixels a tick can lead
+     * to, the level is laid out again from the start up to it, which takes a
+     * moment but gives the same chunk, since the seed decides the level.
+     * @param state where the fields are read from
+     */
+    void load(StateVector state) {
+        scrolled = state.getDouble();
+        int number = state.getInt();
+        nextObstacle = state.getInt();
+        nextPowerUp = state.getInt();
+        powerUpsDue = state.getInt();
+        if (number <= taken - KEPT) {
+            restartLevel();
+            for (int n = 0; n < number; n++) {
+                moveTo(n);
+            }
+        }
+        moveTo(number);
+        onCanvas = state.getLong();
+        scored = state.getLong();
+    }
+
+    /** Returns how far the obstacles have scrolled this run, which is how far the player has come.
+     * @return the distance, in pixels
+     */
+    double getScrolled() {
+        return scrolled;
+    }
+
+    /**
+     * Estimates how many ticks until the nearest obstacle ahead of a point
+     * reaches it, at the speed it is going now.
+     * @param x the point, such as the player's right edge
+     * @param moves ticks into the run, which set the speed
+     * @return ticks until the nearest obstacle arrives, or infinity if none is ahead
+     */
+    double ticksUntil(double x, int moves) {
+        double nearest = Double.POSITIVE_INFINITY;
+        for (long bits = onCanvas; bits != 0; bits &= bits - 1) {
+            int e = pool[Long.numberOfTrailingZeros(bits)];
+            if (world.getX(e) > x) {
+                nearest = Math.min(nearest, world.getX(e) - x);
+            }
+        }
+        return nearest / difficulty.speed(moves);
+    }
+
+    /**
+     * Spawns every obstacle, and counts every powerup, whose place in the
+     * level has reached the right edge, moving on to the next chunk as each
+     * is used up. An obstacle whose size has none free waits for the next tick.
+     */
+    private void comeOn() {
+        double edge = scrolled + SPAWN_X;
+        while (true) {
+            if (nextObstacle < chunk.obstacles() && chunk.obstacleX(nextObstacle) <= edge) {
+                if (!spawn(chunk.obstacleSize(nextObstacle), chunk.obstacleX(nextObstacle) - scrolled)) {
+                    return;
+                }
+                nextObstacle++;
+            } else if (nextPowerUp < chunk.powerUps() && chunk.powerUpX(nextPowerUp) <= edge) {
+                powerUpsDue++;
+                nextPowerUp++;
+            } else if (chunk.end() <= edge && nextObstacle == chunk.obstacles() && nextPowerUp == chunk.powerUps()) {
+                moveTo(chunkNumber + 1);
+                nextObstacle = 0;
+                nextPowerUp = 0;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /** Gives back every chunk held on to, and starts the run's level over. */
+    private void restartLevel() {
+        for (int slot = 0; slot < KEPT; slot++) {
+            if (played[slot] != null) {
+                level.discard(played[slot]);
+                played[slot] = null;
+            }
+        }
+        level.restart(seed, difficulty);
+        taken = -1;
+    }
+
+    /**
+     * Makes a chunk the one coming on. One past the newest held on to is
+     * taken from the feed, and the oldest held is given back to make room.
+     * @param number the chunk's number, no more than one past the newest
+     */
+    private void moveTo(int number) {
+        int slot = number & (KEPT - 1);
+        if (number > taken) {
+            if (played[slot] != null) {
+                level.discard(played[slot]);
+            }
+            played[slot] = level.next();
+            taken = number;
+        }
+        chunk = played[slot];
+        chunkNumber = number;
+    }
+
+    /**
+     * Spawns a free obstacle of a size.
+     * @param size which of {@link #SIZES}
+     * @param x where on the canvas it comes on
+     * @return false if every obstacle of that size is on the canvas
+     */
+    private boolean spawn(int size, double x) {
+        for (int i = size * PER_SIZE; i < (size + 1) * PER_SIZE; i++) {
+            if ((onCanvas & 1L << i) == 0) {
+                int e = pool[i];
+                world.place(e, x, world.getY(e), 0);
+                world.setStyle(e, COLOR);
+                world.setCollider(e, layer, 0);
+                onCanvas |= 1L << i;
+                scored &= ~(1L << i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Takes an obstacle off the canvas and stops it, until it is spawned again. */
+    private void despawn(int i) {
+        world.detach(pool[i], Entities.VELOCITY | Entities.STYLE | Entities.COLLIDER);
+        onCanvas &= ~(1L << i);
+    }
+}
@@ -1,26 +1,26 @@
 package game;
 import java.awt.Color;
-import java.awt.Graphics;
 
 /**
  * Player is the class which defines the controllable player present in the SugarDash game.
- * It extends <a href="#{@link}">{@link Polygon}</a>. It is a white square which upon the pressing
- * of w, space, or the up arrow, jumps and rotates 90 degrees clockwise in the air
- * in the same manner as the geometry dash cube.
+ * It steers a square entity in the game's <a href="#{@link}">{@link Entities}</a>, which
+ * upon the pressing of w, space, or the up arrow, jumps and rotates 90 degrees clockwise
+ * in the air in the same manner as the geometry dash cube. The entities move and turn it;
+ * the player decides how fast, and stops it at the floor.
  * @author Augniv Mitra
  * @author James Hui
  * @version %I% %G%
  */
-public class Player extends Polygon{
+public class Player {
     
     /** Falling Gravity. */
-    private static final double GRAVITY = 0.4;
+    static final double GRAVITY = 0.4;
 
     /** Initial Jump Velocity */
-    private static final double JUMPVEL = -14.0;
+    static final double JUMPVEL = -14.0;
 
     /** Number of Frames during Jump */
-    private static final double JUMPFRAMES = (-2 * JUMPVEL) / GRAVITY;
+    static final double JUMPFRAMES = (-2 * JUMPVEL) / GRAVITY;
 
     /** Theta per frame for a jump */
     private static final double THETAPERFRAME = 90.0 / JUMPFRAMES;
@@ -36,41 +36,54 @@ public class Player extends Polygon{
 
     private int side_length;
 
+    private static final Color COLOR = new Color(255, 255, 255);
+
+    /** The entities the player is one of, and which one */
+    private final Entities world;
+    private final int body;
+    private final Entities.Shape shape;
+
     /**
-     * Player is a <a href="#{@link}">{@link Polygon}</a> square with a side length
-     * of <code>side_length</code> placed initially at <code>startPosition</code>.
+     * Player adds a white square with a side length of <code>side_length</code>
+     * to <code>world</code>, placed initially at <code>startPosition</code>.
+     * @param world the entities the player's square is added to
      * @param startPosition a point where <code>Player</code> is placed initially.
-     * @param side_length the length of the side of the square polygon, in pixels.
+     * @param side_length the length of the side of the square, in pixels.
      */
-    public Player(Point startPosition, int side_length){
-        super( new Point[]{ new Point(0,0), new Point(side_length, 0), new Point(side_length, side_length), new Point(0, side_length)}, startPosition, 0.0);
+    public Player(Entities world, Point startPosition, int side_length){
+        this.world = world;
         this.side_length = side_length;
+        shape = new Entities.Shape(new Point(0,0), new Point(side_length, 0), new Point(side_length, side_length), new Point(0, side_length));
+        body = world.add(startPosition.x, startPosition.y);
+        world.setShape(body, world.addShape(shape));
+        world.setStyle(body, COLOR);
     }
 
     /**
-     * Moves the position of this element along the y-axis, the amount of
-     * movement being based on a gravity constant and vertical velocity to 
-     * simulate the acceleration of gravity. While the player is jumping,
-     * rotates the cube. Once the cube falls back down to <code>floorY</code>,
-     * set rotation to 90 degrees clockwise and set vertical velocity to zero.
-     * 
-     * @param floorY the y-value of the floor where the player must land,
-     * in terms of pixels from the top of the canvas
+     * Applies gravity to the vertical velocity, to simulate the acceleration
+     * of gravity, and sets how fast the square falls and turns this tick.
+     * While the player is jumping, the cube rotates. Call before the entities move.
      */
-    public void update(int floorY){
+    public void fall(){
         // Apply gravity to velocity;
         playerVel += GRAVITY;
 
-        // Update Player's y value
-        position.y += playerVel;
-
-        if (!onGround){
-            this.rotation += THETAPERFRAME;
-        }
+        world.setVelocity(body, 0, playerVel);
+        world.setSpin(body, onGround ? 0 : THETAPERFRAME);
+    }
 
+    /**
+     * Once the cube falls back down to <code>floorY</code>, stops it there,
+     * sets rotation to 90 degrees clockwise of where the jump started and sets
+     * vertical velocity to zero. Call after the entities move.
+     * 
+     * @param floorY the y-value of the floor where the player must land,
+     * in terms of pixels from the top of the canvas
+     */
+    public void land(int floorY){
         // If touches the ground, make sure velocity is 0
-        if(position.y >= floorY - side_length){
-            position.y = floorY - side_length;
+        if(world.getY(body) >= floorY - side_length){
+            double rotation = world.getRotation(body);
             playerVel = 0;
             
             if (!onGround) {
@@ -78,17 +91,47 @@ public class Player extends Polygon{
                 onGround = true;
 
                 //
-                this.rotation = (initial_theta + 90) % 360;
+                rotation = (initial_theta + 90) % 360;
             }
+            world.set(body, world.getX(body), floorY - side_length, rotation);
         }
     }
 
     /**
-     * sets the rotation of the Player object to the parameter
-     * @param theta the new degree of rotation
+     * Puts the player back at rest on the ground at (<code>x</code>, <code>y</code>),
+     * unrotated, as at the start of a run. Nothing of the last run's jump is kept.
+     * @param x the new x-position, in pixels
+     * @param y the new y-position, in pixels
+     */
+    public void reset(double x, double y){
+        world.place(body, x, y, 0);
+        world.setVelocity(body, 0, 0);
+        world.setSpin(body, 0);
+        initial_theta = 0;
+        playerVel = 0;
+        onGround = true;
+    }
+
+    /**
+     * Writes everything about the player that a tick can change, apart from
+     * what its entity holds: how fast it is falling, where its jump started
+     * turning from and whether it is on the ground.
+     * @param state where the fields are written
+     */
+    void save(StateVector state){
+        state.put(playerVel);
+        state.put(initial_theta);
+        state.put(onGround);
+    }
+
+    /**
+     * Puts the player back as {@link #save(StateVector)} wrote it.
+     * @param state where the fields are read from
      */
-    public void setRotation (double theta){
-        this.rotation = theta;
+    void load(StateVector state){
+        playerVel = state.getDouble();
+        initial_theta = state.getDouble();
+        onGround = state.getBoolean();
     }
 
     /**
@@ -101,37 +144,25 @@ public class Player extends Polygon{
             onGround = false;
 
             // Reassign theta to keep track of rotation
-            initial_theta = this.rotation;
+            initial_theta = world.getRotation(body);
         }
 
     }
 
-    /** 
-     * Draws player on the canvas. 
-     * @param brush the brush that is being used to draw on the game's canvas
-     * */
-    public void paint(Graphics brush){
-
-        // Get current verticies
-        Point[] points = this.getPoints();
-        int[] xs = new int[points.length];
-        int[] ys = new int[points.length];
-
-        // Update points
-        for (int i = 0; i < points.length; i++) {
-            xs[i] = (int) points[i].x;
-            ys[i] = (int) points[i].y;
-        }
-
-        // Set Brush Color
-        brush.setColor(new Color(255, 255, 255));
-
-        // Draw Shape 
-        brush.fillPolygon(xs, ys, points.length);
+    /** Returns the player's square among the entities.
+     * @return the entity
+     */
+    int getEntity(){
+        return body;
+    }
 
+    /** Returns the player's outline, for drawing copies of it such as ghosts.
+     * @return the shape
+     */
+    Entities.Shape getShape(){
+        return shape;
     }
 
     
 }
 
-
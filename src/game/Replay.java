@@ -0,0 +1,207 @@
+package game;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Replay is a recording of one run of <a href="#{@link}">{@link SugarDash}</a>:
+ * the seed it was reset with, every input and the tick it landed on, and the
+ * tick and score the run ended with. Since a run is decided entirely by its
+ * seed and inputs, that is enough to play it again exactly.
+ * <p>
+ * On disk a replay is a short header followed by each input as the number of
+ * ticks since the one before (in a variable-length encoding) and the input
+ * bits, so a run of thousands of jumps takes a few kilobytes.
+ * </p>
+ * Run with <code>java -cp bin game.Replay file...</code> to play recordings
+ * back headless, as fast as the CPU allows, and check that each one still ends
+ * on the same tick with the same score. Exits with status 1 if any don't.
+ * @version %I% %G%
+ */
+class Replay {
+
+    private static final int MAGIC = 0x53445250; // "SDRP"
+    private static final int VERSION = 5; // 2: obstacles come in patterns, 3: powerups are taken before scoring, 4: levels come in chunks, 5: bodies are entities
+
+    private final long seed;
+    private long[] ticks = new long[64];
+    private byte[] inputs = new byte[64];
+    private int count;
+    private long finalTick = -1;
+    private int finalScore;
+
+    /**
+     * Starts an empty recording of a run.
+     * @param seed the seed the run was reset with
+     */
+    Replay(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Records an input. Inputs must be recorded in tick order.
+     * @param tick the tick the input was applied on
+     * @param input the input bits
+     */
+    void record(long tick, int input) {
+        if (count == ticks.length) {
+            ticks = Arrays.copyOf(ticks, count * 2);
+            inputs = Arrays.copyOf(inputs, count * 2);
+        }
+        ticks[count] = tick;
+        inputs[count] = (byte) input;
+        count++;
+    }
+
+    /**
+     * Records how the run ended.
+     * @param tick the number of ticks the run lasted
+     * @param score the final score
+     */
+    void finish(long tick, int score) {
+        finalTick = tick;
+        finalScore = score;
+    }
+
+    /**
+     * Plays the recording on a game, ticking it as fast as possible without
+     * painting, until the game ends or it runs past the recorded end.
+     * @param game the game to play it on; it is reset with the recorded seed
+     * @return true if the game ended on the recorded tick with the recorded score
+     */
+    boolean play(SugarDash game) {
+        game.resetGame(seed);
+        int next = 0;
+        while (!isOver(game)) {
+            next = feed(game, next);
+            game.tick();
+        }
+        return game.isGameOver() && game.getTicks() == finalTick && game.getScore() == finalScore;
+    }
+
+    /**
+     * Presses the inputs recorded for the tick a game is about to play, so a
+     * recording can be played a tick at a time, at whatever pace the caller
+     * ticks. Start by resetting the game with {@link #getSeed()}.
+     * @param game the game being played
+     * @param next how many inputs have been pressed so far; 0 after a reset
+     * @return how many inputs have been pressed now, to pass in next time
+     */
+    int feed(SugarDash game, int next) {
+        while (next < count && ticks[next] == game.getTicks()) {
+            game.press(inputs[next++]);
+        }
+        return next;
+    }
+
+    /**
+     * Checks whether a game playing the recording has ended, or run past
+     * where the recording did.
+     * @param game the game being played
+     * @return true once there is nothing more to play
+     */
+    boolean isOver(SugarDash game) {
+        return game.isGameOver() || game.getTicks() > finalTick;
+    }
+
+    /** Returns the seed the run was reset with.
+     * @return the seed
+     */
+    long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Writes the recording to a file.
+     * @param file where to write it
+     * @throws IOException if the file can't be written
+     */
+    void save(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(seed);
+            writeVarLong(out, finalTick);
+            writeVarLong(out, finalScore);
+            writeVarLong(out, count);
+            long last = 0;
+            for (int i = 0; i < count; i++) {
+                writeVarLong(out, ticks[i] - last);
+                out.writeByte(inputs[i]);
+                last = ticks[i];
+            }
+        }
+    }
+
+    /**
+     * Reads a recording from a file.
+     * @param file the file to read
+     * @return the recording
+     * @throws IOException if the file can't be read or isn't a recording
+     */
+    static Replay load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                throw new IOException(file + " is not a SugarDash recording");
+            }
+            Replay replay = new Replay(in.readLong());
+            long end = readVarLong(in);
+            int score = (int) readVarLong(in);
+            int events = (int) readVarLong(in);
+            long tick = 0;
+            for (int i = 0; i < events; i++) {
+                tick += readVarLong(in);
+                replay.record(tick, in.readByte());
+            }
+            replay.finish(end, score);
+            return replay;
+        }
+    }
+
+    /** Writes a non-negative number seven bits at a time, low bits first. */
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("malformed number in recording");
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        SugarDash game = new SugarDash(800, 600);
+        boolean allMatch = true;
+        for (String path : args) {
+            Replay replay = load(new File(path));
+            long start = System.nanoTime();
+            boolean match = replay.play(game);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%s: %s, score %d (recorded %d), %d ticks (recorded %d), played in %d ms%n",
+                              path, match ? "OK" : "MISMATCH", game.getScore(), replay.finalScore,
+                              game.getTicks(), replay.finalTick, millis);
+            allMatch &= match;
+        }
+        if (!allMatch) {
+            System.exit(1);
+        }
+    }
+}
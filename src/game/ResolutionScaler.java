@@ -0,0 +1,78 @@
+package game;
+
+/**
+ * ResolutionScaler picks how large to draw the scene so frames stay within a
+ * time budget. The game is told each frame how long drawing took, and the
+ * scaler steps down to a smaller resolution when frames run over budget and
+ * back up when there is room again; the smaller picture is stretched to fill
+ * the window. Gameplay never slows down, the picture just gets softer.
+ * <p>
+ * Frame times are smoothed before being compared, and the two directions are
+ * deliberately lopsided so the scale doesn't flip back and forth: stepping
+ * down takes {@value #DOWN_FRAMES} frames in a row over budget, but stepping
+ * up takes {@value #UP_FRAMES} frames in a row that would still be well
+ * under budget at the next size up, guessing that drawing costs grow with
+ * the number of pixels.
+ * </p>
+ * @version %I% %G%
+ */
+class ResolutionScaler {
+
+    /** The scales that can be drawn at, largest first. */
+    static final double[] LEVELS = {1.0, 0.85, 0.7, 0.55, 0.4};
+    /** How much each frame moves the smoothed frame time. */
+    private static final double SMOOTHING = 0.1;
+    /** The share of the budget a frame at the next size up would have to fit in. */
+    private static final double UP_SHARE = 0.7;
+    private static final int DOWN_FRAMES = 15;
+    private static final int UP_FRAMES = 120;
+
+    private final long budget;
+    private double average;
+    private int level;
+    /** How many frames in a row have been over budget, or had room to step up */
+    private int over, under;
+
+    /**
+     * Creates a scaler that starts at full size.
+     * @param budgetNanos how long drawing a frame may take, in nanoseconds
+     */
+    ResolutionScaler(long budgetNanos) {
+        budget = budgetNanos;
+    }
+
+    /**
+     * Records how long the last frame took, and changes the scale if frames
+     * have been over budget, or under it with room to spare, for long enough.
+     * @param nanos how long the frame took to draw, in nanoseconds
+     */
+    void frameTook(long nanos) {
+        average = average == 0 ? nanos : average + (nanos - average) * SMOOTHING;
+        over = average > budget ? over + 1 : 0;
+        under = level > 0 && average * grow(level) < budget * UP_SHARE ? under + 1 : 0;
+
+        if (over >= DOWN_FRAMES && level < LEVELS.length - 1) {
+            level++;
+            // Assume the smaller frames are quicker in proportion until measured.
+            average /= grow(level);
+            over = under = 0;
+        } else if (under >= UP_FRAMES) {
+            average *= grow(level);
+            level--;
+            over = under = 0;
+        }
+    }
+
+    /** Returns the scale to draw the next frame at.
+     * @return the share of full size, from 0 to 1
+     */
+    double getScale() {
+        return LEVELS[level];
+    }
+
+    /** Returns how many times more pixels the level above a level draws. */
+    private static double grow(int level) {
+        double ratio = LEVELS[level - 1] / LEVELS[level];
+        return ratio * ratio;
+    }
+}
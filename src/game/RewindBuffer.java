@@ -0,0 +1,220 @@
+package game;
+
+/**
+ * RewindBuffer keeps the game's state for each of the last several seconds
+ * of ticks, so a run can be wound back to any of them. States come in as
+ * <a href="#{@link}">{@link StateVector}</a>s and are packed into one byte
+ * ring made up front, oldest overwritten first, so keeping them costs the
+ * same memory however long the game runs.
+ * <p>
+ * Every {@value #KEY_INTERVAL}th state is a keyframe, stored whole. Each
+ * state between is a delta: every value is predicted from the two states
+ * before it, as if it kept changing at the same rate, and only the values
+ * that miss are stored, as how far off they were in a variable-length
+ * encoding. Something standing still or moving steadily costs nothing, and
+ * something speeding up costs a byte or two, so a delta is a few dozen bytes
+ * where a keyframe is a thousand. Doubles are predicted from their bits, which
+ * for the small steps between ticks change nearly in step with the value.
+ * </p>
+ * Winding back decodes forward from the keyframe before the state wanted, at
+ * most {@value #KEY_INTERVAL} deltas, and drops every state after it, so the
+ * run carries on from there. When the ring runs out of room the oldest
+ * keyframe and its deltas go together, so whatever is kept can be decoded.
+ * @version %I% %G%
+ */
+class RewindBuffer {
+
+    /** How often a state is stored whole. */
+    static final int KEY_INTERVAL = 32;
+    /** The most states kept; a power of two. */
+    private static final int FRAMES = 1024;
+    private static final int MIN_BYTES = 1 << 16;
+
+    private byte[] bytes = new byte[0];
+    private int mask;
+    /** How many values each state has; a different size starts the buffer over */
+    private int width = -1;
+
+    /** For each state kept, where it starts in the ring and whether it is a keyframe */
+    private final long[] frameStart = new long[FRAMES];
+    private final boolean[] key = new boolean[FRAMES];
+    /** The states kept are numbered <code>first</code> to <code>next - 1</code> */
+    private long first, next;
+    private long lastKey;
+    /** Where the next state goes in the ring, counting every byte ever written */
+    private long writeAt;
+
+    /** The last two states kept, which the next one is predicted from */
+    private StateVector last = new StateVector(), beforeLast = new StateVector();
+
+    /**
+     * Keeps a state as the newest.
+     * @param state the state after the latest tick
+     */
+    void record(StateVector state) {
+        int n = state.size();
+        if (n != width) {
+            resize(n);
+        }
+        int worst = 15 * n + 5;
+        while (first != next && (next - first >= FRAMES || writeAt + worst - frameStart[slot(first)] > bytes.length)) {
+            dropOldest();
+        }
+        boolean isKey = first == next || next - lastKey >= KEY_INTERVAL;
+        int slot = slot(next);
+        frameStart[slot] = writeAt;
+        key[slot] = isKey;
+
+        if (isKey) {
+            for (int i = 0; i < n; i++) {
+                long value = state.get(i);
+                for (int b = 0; b < 8; b++) {
+                    bytes[(int) (writeAt++ & mask)] = (byte) (value >>> (b * 8));
+                }
+            }
+            lastKey = next;
+        } else {
+            boolean afterKey = key[slot(next - 1)];
+            int previous = -1;
+            for (int i = 0; i < n; i++) {
+                long predicted = afterKey ? last.get(i) : 2 * last.get(i) - beforeLast.get(i);
+                long miss = state.get(i) - predicted;
+                if (miss != 0) {
+                    putVar(i - previous);
+                    putVar((miss << 1) ^ (miss >> 63));
+                    previous = i;
+                }
+            }
+            putVar(0);
+        }
+        next++;
+
+        StateVector swap = beforeLast;
+        beforeLast = last;
+        last = swap;
+        last.copy(state);
+    }
+
+    /**
+     * Winds back to an earlier state and forgets every state after it.
+     * @param ticks how many ticks before the newest state to go back; if fewer
+     *              are kept, the oldest state kept is used
+     * @param into where the state is decoded
+     * @return false if no state is kept
+     */
+    boolean restore(int ticks, StateVector into) {
+        if (first == next) {
+            return false;
+        }
+        long target = Math.max(first, next - 1 - ticks);
+        long frame = target;
+        while (!key[slot(frame)]) {
+            frame--;
+        }
+
+        last.setSize(width);
+        long at = frameStart[slot(frame)];
+        for (int i = 0; i < width; i++) {
+            long value = 0;
+            for (int b = 0; b < 8; b++) {
+                value |= (bytes[(int) (at++ & mask)] & 0xffL) << (b * 8);
+            }
+            last.set(i, value);
+        }
+        beforeLast.setSize(width);
+        while (frame < target) {
+            frame++;
+            boolean afterKey = key[slot(frame - 1)];
+            for (int i = 0; i < width; i++) {
+                beforeLast.set(i, afterKey ? last.get(i) : 2 * last.get(i) - beforeLast.get(i));
+            }
+            at = frameStart[slot(frame)];
+            int i = -1;
+            while (true) {
+                long gap = readVar(at);
+                at += varLength(gap);
+                if (gap == 0) break;
+                i += (int) gap;
+                long miss = readVar(at);
+                at += varLength(miss);
+                beforeLast.set(i, beforeLast.get(i) + ((miss >>> 1) ^ -(miss & 1)));
+            }
+            StateVector swap = beforeLast;
+            beforeLast = last;
+            last = swap;
+        }
+
+        if (target + 1 < next) {
+            writeAt = frameStart[slot(target + 1)];
+        }
+        next = target + 1;
+        lastKey = target;
+        while (!key[slot(lastKey)]) {
+            lastKey--;
+        }
+        into.copy(last);
+        return true;
+    }
+
+    /** Forgets every state, as a new run starts. */
+    void clear() {
+        first = next;
+    }
+
+    /** Returns how many states are kept.
+     * @return the number of ticks that can be wound back, plus one
+     */
+    int size() {
+        return (int) (next - first);
+    }
+
+    /** Returns how much of the ring the states kept take up.
+     * @return the size, in bytes
+     */
+    long bytesHeld() {
+        return first == next ? 0 : writeAt - frameStart[slot(first)];
+    }
+
+    /** Makes the ring big enough for a few dozen keyframes of states with <code>n</code> values. */
+    private void resize(int n) {
+        int needed = Math.max(MIN_BYTES, 32 * 8 * n);
+        bytes = new byte[Integer.highestOneBit(needed - 1) << 1];
+        mask = bytes.length - 1;
+        width = n;
+        first = next;
+        writeAt = 0;
+    }
+
+    /** Drops the oldest keyframe and the deltas that depend on it. */
+    private void dropOldest() {
+        do {
+            first++;
+        } while (first != next && !key[slot(first)]);
+    }
+
+    private static int slot(long frame) {
+        return (int) (frame & (FRAMES - 1));
+    }
+
+    /** Writes a non-negative number seven bits at a time, low bits first, as in a replay. */
+    private void putVar(long value) {
+        while ((value & ~0x7FL) != 0) {
+            bytes[(int) (writeAt++ & mask)] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[(int) (writeAt++ & mask)] = (byte) value;
+    }
+
+    private long readVar(long at) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = bytes[(int) (at++ & mask)];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    private static int varLength(long value) {
+        return Math.max(1, (64 - Long.numberOfLeadingZeros(value) + 6) / 7);
+    }
+}
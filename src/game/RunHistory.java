@@ -0,0 +1,187 @@
+package game;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * RunHistory keeps every finished run of <a href="#{@link}">{@link SugarDash}</a>
+ * in a file, so the high score and best time survive from one launch to the
+ * next. The file is memory-mapped: opening it reads only a small header that
+ * already holds the count and the bests, so it opens just as fast after
+ * millions of runs.
+ * <p>
+ * The file is a {@value #HEADER_BYTES}-byte header followed by one
+ * {@value #RECORD_BYTES}-byte record per run, in the order the runs ended:
+ * score, survival time in nanoseconds, seed, and when it ended. A run is
+ * appended by writing its record past the end and flushing it to disk, and
+ * only then updating the header. A crash partway through loses at most
+ * that one run and never corrupts the ones before it.
+ * </p>
+ * @version %I% %G%
+ */
+class RunHistory implements Closeable {
+
+    private static final int MAGIC = 0x53444848; // "SDHH"
+    private static final int VERSION = 1;
+
+    static final int HEADER_BYTES = 64;
+    static final int RECORD_BYTES = 32;
+
+    // Header fields
+    private static final int AT_MAGIC = 0, AT_VERSION = 4, AT_COUNT = 8,
+                             AT_BEST_SCORE = 16, AT_BEST_NANOS = 24;
+    // Record fields, from the start of the record
+    private static final int AT_SCORE = 0, AT_NANOS = 8, AT_SEED = 16, AT_ENDED = 24;
+
+    private static final int INITIAL_RECORDS = 1024;
+
+    private final FileChannel channel;
+    private MappedByteBuffer map;
+    private int capacity;
+    private long count;
+    private int bestScore;
+    private long bestNanos;
+
+    /**
+     * Opens a history file, creating an empty one if there is none.
+     * @param file the history file
+     * @throws IOException if the file can't be opened or isn't a history file
+     */
+    RunHistory(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                                   StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try {
+            boolean fresh = channel.size() == 0;
+            long records = Math.max(INITIAL_RECORDS, (channel.size() - HEADER_BYTES) / RECORD_BYTES);
+            mapFor(records);
+            if (fresh) {
+                map.putInt(AT_MAGIC, MAGIC);
+                map.putInt(AT_VERSION, VERSION);
+                map.force(0, HEADER_BYTES);
+            } else if (map.getInt(AT_MAGIC) != MAGIC || map.getInt(AT_VERSION) != VERSION) {
+                throw new IOException(file + " is not a SugarDash history file");
+            }
+            count = map.getLong(AT_COUNT);
+            bestScore = map.getInt(AT_BEST_SCORE);
+            bestNanos = map.getLong(AT_BEST_NANOS);
+        } catch (IOException exc) {
+            channel.close();
+            throw exc;
+        }
+    }
+
+    /**
+     * Records a finished run.
+     * @param score the run's score
+     * @param nanos how long the run lasted, in nanoseconds of game time
+     * @param seed the seed the run was played with
+     * @param endedMillis when the run ended, in milliseconds since the epoch
+     * @throws IOException if the file can't grow to fit the run
+     */
+    void append(int score, long nanos, long seed, long endedMillis) throws IOException {
+        if (count == capacity) {
+            mapFor(capacity * 2L);
+        }
+        int at = offset(count);
+        map.putInt(at + AT_SCORE, score);
+        map.putLong(at + AT_NANOS, nanos);
+        map.putLong(at + AT_SEED, seed);
+        map.putLong(at + AT_ENDED, endedMillis);
+        map.force(at, RECORD_BYTES);
+
+        count++;
+        bestScore = Math.max(bestScore, score);
+        bestNanos = Math.max(bestNanos, nanos);
+        map.putInt(AT_BEST_SCORE, bestScore);
+        map.putLong(AT_BEST_NANOS, bestNanos);
+        map.putLong(AT_COUNT, count);
+        map.force(0, HEADER_BYTES);
+    }
+
+    /** Returns how many runs have been recorded.
+     * @return the number of runs
+     */
+    long size() {
+        return count;
+    }
+
+    /** Returns the highest score of any run.
+     * @return the best score, or 0 if there are no runs
+     */
+    int getBestScore() {
+        return bestScore;
+    }
+
+    /** Returns the longest time any run lasted.
+     * @return the best time in nanoseconds, or 0 if there are no runs
+     */
+    long getBestNanos() {
+        return bestNanos;
+    }
+
+    /** Returns a run's score.
+     * @param run which run, counting from 0
+     * @return its score
+     */
+    int getScore(long run) {
+        return map.getInt(offset(check(run)) + AT_SCORE);
+    }
+
+    /** Returns how long a run lasted.
+     * @param run which run, counting from 0
+     * @return its time in nanoseconds of game time
+     */
+    long getNanos(long run) {
+        return map.getLong(offset(check(run)) + AT_NANOS);
+    }
+
+    /** Returns the seed a run was played with.
+     * @param run which run, counting from 0
+     * @return its seed
+     */
+    long getSeed(long run) {
+        return map.getLong(offset(check(run)) + AT_SEED);
+    }
+
+    /** Returns when a run ended.
+     * @param run which run, counting from 0
+     * @return milliseconds since the epoch
+     */
+    long getEndedMillis(long run) {
+        return map.getLong(offset(check(run)) + AT_ENDED);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long check(long run) {
+        if (run < 0 || run >= count) {
+            throw new IndexOutOfBoundsException("run " + run + " of " + count);
+        }
+        return run;
+    }
+
+    private static int offset(long run) {
+        return (int) (HEADER_BYTES + run * RECORD_BYTES);
+    }
+
+    /**
+     * Maps enough of the file to hold a number of records, growing the file
+     * if it is shorter. One mapping can't pass 2 GB, which is some 67 million
+     * runs.
+     */
+    private void mapFor(long records) throws IOException {
+        long bytes = HEADER_BYTES + records * RECORD_BYTES;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException("run history is full");
+        }
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        capacity = (int) records;
+    }
+}
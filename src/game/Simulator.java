@@ -0,0 +1,208 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.LongStream;
+
+/**
+ * Simulator plays SugarDash headless with a scripted player, many games at
+ * once across every core, to see how a {@link Difficulty} plays out without
+ * sitting through it by hand. Each game is its own headless SugarDash reset
+ * with the game's index as seed, so a sweep gives the same numbers every time
+ * it is run, on any number of cores.
+ * <p>
+ * Run with <code>java -cp bin game.Simulator key=value...</code>. Every key
+ * takes a comma-separated list, and one line of results is printed for every
+ * combination of them:
+ * </p>
+ * <ul>
+ * <li><code>base</code>, <code>divisor</code>, <code>cap</code>,
+ *     <code>chance</code>: the {@link Difficulty} to play</li>
+ * <li><code>policy</code>: how the player jumps; <code>never</code>,
+ *     <code>random:p</code> (jump with chance p each tick) or
+ *     <code>reactive:t[:n]</code> (jump once the obstacle is t ticks away,
+ *     noticing it with chance n each tick, so reactions run late at random)</li>
+ * <li><code>games</code>: games per line, and <code>ticks</code>: the most
+ *     ticks a game may last before it is counted as survived</li>
+ * </ul>
+ * @version %I% %G%
+ */
+class Simulator {
+
+    /** Decides, tick by tick, when a simulated player jumps. */
+    interface Policy {
+        /**
+         * Decides whether to jump on the coming tick.
+         * @param game the game being played
+         * @param random the player's own random numbers, seeded per game
+         * @return true to jump
+         */
+        boolean jump(SugarDash game, SplittableRandom random);
+    }
+
+    /**
+     * Reads a policy from its command-line form.
+     * @param spec <code>never</code>, <code>random:p</code> or <code>reactive:t[:n]</code>
+     * @return the policy
+     * @throws IllegalArgumentException if the form isn't one of those
+     */
+    static Policy policy(String spec) {
+        String[] parts = spec.split(":");
+        switch (parts[0]) {
+        case "never":
+            return (game, random) -> false;
+        case "random":
+            double chance = Double.parseDouble(parts[1]);
+            return (game, random) -> random.nextDouble() < chance;
+        case "reactive":
+            double lead = Double.parseDouble(parts[1]);
+            double notice = parts.length > 2 ? Double.parseDouble(parts[2]) : 1;
+            return (game, random) -> {
+                double until = game.ticksUntilObstacle();
+                return until > 0 && until <= lead && random.nextDouble() < notice;
+            };
+        default:
+            throw new IllegalArgumentException("unknown policy " + spec);
+        }
+    }
+
+    /**
+     * Tally adds up how a batch of games went. Survival is counted in whole
+     * seconds and scores one by one, each into a fixed histogram, so a tally
+     * is the same size however many games go into it.
+     */
+    static final class Tally {
+        private static final int MAX_SCORE = 4096;
+
+        final long[] seconds;
+        final long[] scores = new long[MAX_SCORE + 1];
+        long games, survived, totalTicks, totalScore;
+
+        Tally(long maxTicks) {
+            seconds = new long[(int) (maxTicks / TICKS_PER_SECOND) + 1];
+        }
+
+        void add(long ticks, int score, boolean over) {
+            games++;
+            if (!over) survived++;
+            totalTicks += ticks;
+            totalScore += score;
+            seconds[(int) Math.min(ticks / TICKS_PER_SECOND, seconds.length - 1)]++;
+            scores[Math.min(score, MAX_SCORE)]++;
+        }
+
+        void merge(Tally other) {
+            games += other.games;
+            survived += other.survived;
+            totalTicks += other.totalTicks;
+            totalScore += other.totalScore;
+            for (int i = 0; i < seconds.length; i++) seconds[i] += other.seconds[i];
+            for (int i = 0; i < scores.length; i++) scores[i] += other.scores[i];
+        }
+
+        /** Returns the smallest bucket at or below which a fraction of games fall. */
+        static int percentile(long[] histogram, long games, double fraction) {
+            long wanted = (long) Math.ceil(games * fraction);
+            long seen = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                seen += histogram[i];
+                if (seen >= wanted && seen > 0) return i;
+            }
+            return histogram.length - 1;
+        }
+    }
+
+    private static final int TICKS_PER_SECOND = Game.TICKS_PER_SECOND;
+
+    /** One headless game per worker thread, reset for every game it plays. */
+    private static final ThreadLocal<SugarDash> GAMES =
+        ThreadLocal.withInitial(() -> new SugarDash(800, 600));
+
+    /**
+     * Plays a batch of games in parallel and adds up the results.
+     * @param difficulty the difficulty to play at
+     * @param policy how the player jumps
+     * @param games how many games to play; game i is seeded with i
+     * @param maxTicks the most ticks one game may last
+     * @return the results
+     */
+    static Tally run(Difficulty difficulty, Policy policy, long games, long maxTicks) {
+        return LongStream.range(0, games).parallel().collect(
+            () -> new Tally(maxTicks),
+            (tally, seed) -> {
+                SugarDash game = GAMES.get();
+                game.setDifficulty(difficulty);
+                game.resetGame(seed);
+                SplittableRandom random = new SplittableRandom(~seed);
+                while (!game.isGameOver() && game.getTicks() < maxTicks) {
+                    if (policy.jump(game, random)) {
+                        game.press(SugarDash.INPUT_JUMP);
+                    }
+                    game.tick();
+                }
+                tally.add(game.getTicks(), game.getScore(), game.isGameOver());
+            },
+            Tally::merge);
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        String[] bases = {"3.0"}, divisors = {"500"}, caps = {Integer.toString(Difficulty.MAX_MOVE_SPEED)},
+                 chances = {"0.1"}, policies = {"reactive:30:0.15"};
+        long games = 100_000, maxTicks = 30_000;
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split < 0) {
+                System.err.println("Expected key=value, got " + arg);
+                System.exit(2);
+            }
+            String[] values = arg.substring(split + 1).split(",");
+            switch (arg.substring(0, split)) {
+            case "base": bases = values; break;
+            case "divisor": divisors = values; break;
+            case "cap": caps = values; break;
+            case "chance": chances = values; break;
+            case "policy": policies = values; break;
+            case "games": games = Long.parseLong(values[0]); break;
+            case "ticks": maxTicks = Long.parseLong(values[0]); break;
+            default:
+                System.err.println("Unknown key " + arg);
+                System.exit(2);
+            }
+        }
+
+        List<Difficulty> sweep = new ArrayList<>();
+        for (String base : bases)
+            for (String divisor : divisors)
+                for (String cap : caps)
+                    for (String chance : chances)
+                        sweep.add(new Difficulty(Double.parseDouble(base), Double.parseDouble(divisor),
+                                                 Integer.parseInt(cap), Double.parseDouble(chance)));
+
+        System.out.printf("%d games per line on %d cores, at most %d ticks each%n",
+                          games, Runtime.getRuntime().availableProcessors(), maxTicks);
+        for (String spec : policies) {
+            Policy policy = policy(spec);
+            for (Difficulty difficulty : sweep) {
+                long start = System.nanoTime();
+                Tally tally = run(difficulty, policy, games, maxTicks);
+                long millis = (System.nanoTime() - start) / 1_000_000;
+                System.out.printf("%s policy=%s | survived %.2f%% | seconds mean %.1f p10 %d p50 %d p90 %d p99 %d"
+                                  + " | score mean %.1f p10 %d p50 %d p90 %d p99 %d | %d ms%n",
+                                  difficulty, spec, 100.0 * tally.survived / tally.games,
+                                  (double) tally.totalTicks / tally.games / TICKS_PER_SECOND,
+                                  Tally.percentile(tally.seconds, tally.games, 0.10),
+                                  Tally.percentile(tally.seconds, tally.games, 0.50),
+                                  Tally.percentile(tally.seconds, tally.games, 0.90),
+                                  Tally.percentile(tally.seconds, tally.games, 0.99),
+                                  (double) tally.totalScore / tally.games,
+                                  Tally.percentile(tally.scores, tally.games, 0.10),
+                                  Tally.percentile(tally.scores, tally.games, 0.50),
+                                  Tally.percentile(tally.scores, tally.games, 0.90),
+                                  Tally.percentile(tally.scores, tally.games, 0.99),
+                                  millis);
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * SpatialGrid answers "what could touch this box?" without testing every
+ * collider in the game. The canvas is cut into square cells, and each placed
+ * id is listed in every cell its bounding box overlaps. A query only looks at
+ * the cells the asking box overlaps, so its cost depends on how crowded that
+ * spot is, not on how many ids there are. Anything off the canvas is filed
+ * in the nearest edge cell.
+ * <p>
+ * Ids are small numbers chosen by the caller, such as
+ * <a href="#{@link}">{@link Entities}</a> indexes, and are placed again after
+ * each move; one that stays in the same cells costs a few comparisons. The
+ * grid grows to the largest id it has seen, so nothing is allocated once
+ * every id has been placed. A query's results stay readable through
+ * {@link #found(int)} until the next query.
+ * </p>
+ * @version %I% %G%
+ */
+class SpatialGrid {
+
+    private final int cellSize, columns, rows;
+
+    /** The ids in each cell */
+    private final int[][] cells;
+    private final int[] cellCounts;
+
+    /** The cells each id is listed in, or minColumn -1 if it is in none */
+    private int[] minColumn = new int[0], minRow = new int[0], maxColumn = new int[0], maxRow = new int[0];
+    /** The query each id was last found by, so no id is found twice */
+    private int[] foundBy = new int[0];
+
+    private int[] results = new int[0];
+    private int resultCount;
+    private int query;
+
+    /**
+     * Creates an empty grid over a canvas.
+     * @param width the canvas width, in pixels
+     * @param height the canvas height, in pixels
+     * @param cellSize the side of each cell, in pixels; about the size of the
+     *                 largest collider works best
+     */
+    SpatialGrid(int width, int height, int cellSize) {
+        this.cellSize = cellSize;
+        columns = (width + cellSize - 1) / cellSize;
+        rows = (height + cellSize - 1) / cellSize;
+        cells = new int[columns * rows][4];
+        cellCounts = new int[columns * rows];
+    }
+
+    /**
+     * Files an id under the cells a bounding box overlaps, moving it from the
+     * cells it was in before.
+     * @param id the id
+     * @param minX the box's left edge, in pixels
+     * @param minY the box's top edge, in pixels
+     * @param maxX the box's right edge, in pixels
+     * @param maxY the box's bottom edge, in pixels
+     */
+    void place(int id, double minX, double minY, double maxX, double maxY) {
+        if (id >= minColumn.length) {
+            grow(id);
+        }
+        int left = column(minX), right = column(maxX);
+        int top = row(minY), bottom = row(maxY);
+        if (left == minColumn[id] && right == maxColumn[id] && top == minRow[id] && bottom == maxRow[id]) {
+            return;
+        }
+        remove(id);
+        for (int r = top; r <= bottom; r++) {
+            for (int c = left; c <= right; c++) {
+                add(r * columns + c, id);
+            }
+        }
+        minColumn[id] = left;
+        maxColumn[id] = right;
+        minRow[id] = top;
+        maxRow[id] = bottom;
+    }
+
+    /**
+     * Takes an id out of every cell, so queries don't find it until it is
+     * placed again.
+     * @param id the id
+     */
+    void remove(int id) {
+        if (id >= minColumn.length || minColumn[id] < 0) return;
+        for (int r = minRow[id]; r <= maxRow[id]; r++) {
+            for (int c = minColumn[id]; c <= maxColumn[id]; c++) {
+                int cell = r * columns + c;
+                int[] ids = cells[cell];
+                int last = --cellCounts[cell];
+                for (int i = 0; i <= last; i++) {
+                    if (ids[i] == id) {
+                        ids[i] = ids[last];
+                        break;
+                    }
+                }
+            }
+        }
+        minColumn[id] = -1;
+    }
+
+    /**
+     * Finds every placed id whose cells overlap a bounding box. Those are the
+     * only ones that could touch it; the caller still has to check.
+     * @param minX the box's left edge, in pixels
+     * @param minY the box's top edge, in pixels
+     * @param maxX the box's right edge, in pixels
+     * @param maxY the box's bottom edge, in pixels
+     * @param skip an id to leave out, such as the asker's own, or -1
+     * @return how many were found; read them with {@link #found(int)}
+     */
+    int query(double minX, double minY, double maxX, double maxY, int skip) {
+        query++;
+        resultCount = 0;
+        int left = column(minX), right = column(maxX);
+        int top = row(minY), bottom = row(maxY);
+        for (int r = top; r <= bottom; r++) {
+            for (int c = left; c <= right; c++) {
+                int cell = r * columns + c;
+                int[] ids = cells[cell];
+                for (int i = 0, n = cellCounts[cell]; i < n; i++) {
+                    int id = ids[i];
+                    if (foundBy[id] != query && id != skip) {
+                        foundBy[id] = query;
+                        results[resultCount++] = id;
+                    }
+                }
+            }
+        }
+        return resultCount;
+    }
+
+    /**
+     * Returns one result of the last query.
+     * @param i which result, from 0 to one less than the query's count
+     * @return the id found
+     */
+    int found(int i) {
+        return results[i];
+    }
+
+    /** Makes room for ids up to <code>id</code>, in the tables and in every cell. */
+    private void grow(int id) {
+        int old = minColumn.length, grown = Math.max(16, Integer.highestOneBit(id) << 1);
+        minColumn = Arrays.copyOf(minColumn, grown);
+        minRow = Arrays.copyOf(minRow, grown);
+        maxColumn = Arrays.copyOf(maxColumn, grown);
+        maxRow = Arrays.copyOf(maxRow, grown);
+        foundBy = Arrays.copyOf(foundBy, grown);
+        results = Arrays.copyOf(results, grown);
+        Arrays.fill(minColumn, old, grown, -1);
+        for (int cell = 0; cell < cells.length; cell++) {
+            if (cells[cell].length < grown) {
+                cells[cell] = Arrays.copyOf(cells[cell], grown);
+            }
+        }
+    }
+
+    private void add(int cell, int id) {
+        cells[cell][cellCounts[cell]++] = id;
+    }
+
+    // Casting rounds toward zero rather than down, which only differs left of
+    // zero, and everything there is filed in the first cell either way.
+    private int column(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) (x / cellSize)));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) (y / cellSize)));
+    }
+}
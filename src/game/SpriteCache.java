@@ -0,0 +1,142 @@
+package game;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.function.Consumer;
+
+/**
+ * SpriteCache holds pictures of shapes that have already been drawn once, so
+ * that drawing them again is a single image copy rather than filling a
+ * polygon. Sprites are looked up by a <code>long</code> key the caller makes
+ * up (for example a color and a rotation), and the lookup itself makes no
+ * garbage, so it can be used every frame.
+ * @version %I% %G%
+ */
+class SpriteCache {
+
+    /**
+     * A Sprite is a translucent picture of a shape plus where its top-left
+     * corner sits relative to the shape's position.
+     */
+    static final class Sprite {
+        private final Image image;
+        private final int offsetX, offsetY;
+
+        private Sprite(Image image, int offsetX, int offsetY) {
+            this.image = image;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+        }
+
+        /**
+         * Draws the sprite for a shape positioned at (x, y).
+         * @param brush the brush that is being used to draw on the game's canvas
+         * @param x the shape's x-position, in pixels
+         * @param y the shape's y-position, in pixels
+         */
+        void draw(Graphics brush, double x, double y) {
+            brush.drawImage(image, (int) Math.floor(x) + offsetX, (int) Math.floor(y) + offsetY, null);
+        }
+    }
+
+    private long[] keys = new long[16];
+    private Sprite[] sprites = new Sprite[16];
+    private int size;
+
+    /**
+     * Returns the sprite stored under a key.
+     * @param key the key it was stored under
+     * @return the sprite, or null if nothing has been stored under that key
+     */
+    Sprite get(long key) {
+        for (int i = slot(key, keys.length); sprites[i] != null; i = (i + 1) & (keys.length - 1)) {
+            if (keys[i] == key) return sprites[i];
+        }
+        return null;
+    }
+
+    /**
+     * Stores a sprite under a key, replacing whatever was there.
+     * @param key the key to store it under
+     * @param sprite the sprite
+     * @return the sprite, for chaining
+     */
+    Sprite put(long key, Sprite sprite) {
+        if (2 * (size + 1) > keys.length) grow();
+        int i = slot(key, keys.length);
+        while (sprites[i] != null && keys[i] != key) i = (i + 1) & (keys.length - 1);
+        if (sprites[i] == null) size++;
+        keys[i] = key;
+        sprites[i] = sprite;
+        return sprite;
+    }
+
+    /**
+     * Draws a new sprite. The painter draws in the shape's own coordinates,
+     * where (0, 0) is its position; everything it draws must fall inside the
+     * given bounds.
+     * @param minX the left edge of what will be drawn, relative to the shape's position
+     * @param minY the top edge
+     * @param maxX the right edge
+     * @param maxY the bottom edge
+     * @param painter draws the shape
+     * @return the new sprite
+     */
+    static Sprite render(double minX, double minY, double maxX, double maxY, Consumer<Graphics> painter) {
+        int left = (int) Math.floor(minX), top = (int) Math.floor(minY);
+        int width = (int) Math.ceil(maxX) - left + 1, height = (int) Math.ceil(maxY) - top + 1;
+        Image image = createTranslucent(width, height);
+        Graphics brush = image.getGraphics();
+        try {
+            brush.translate(-left, -top);
+            painter.accept(brush);
+        } finally {
+            brush.dispose();
+        }
+        return new Sprite(image, left, top);
+    }
+
+    /**
+     * Makes a key out of a color and a small number such as a rotation step.
+     * @param color the color
+     * @param step the number, from 0 to 2<sup>32</sup>-1
+     * @return the key
+     */
+    static long key(Color color, int step) {
+        return ((long) color.getRGB() << 32) | (step & 0xffffffffL);
+    }
+
+    /**
+     * Makes an empty see-through image, laid out the way the screen likes
+     * when there is one so drawing it is as fast as it can be.
+     */
+    private static Image createTranslucent(int width, int height) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+        GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment()
+            .getDefaultScreenDevice().getDefaultConfiguration();
+        return gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+    }
+
+    private static int slot(long key, int length) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & (length - 1);
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        Sprite[] oldSprites = sprites;
+        keys = new long[oldKeys.length * 2];
+        sprites = new Sprite[oldSprites.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldSprites[i] != null) put(oldKeys[i], oldSprites[i]);
+        }
+    }
+}
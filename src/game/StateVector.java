@@ -0,0 +1,123 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * StateVector is a game's state laid out flat as a row of longs, so it can be
+ * stored and compared without knowing what any of it means. Each part of the
+ * game writes its fields in a fixed order with the <code>put</code> methods,
+ * and reads them back in the same order with the <code>get</code> methods.
+ * Doubles are kept as their exact bits, so a state read back is exactly the
+ * state written.
+ * <p>
+ * The row grows the first time a bigger state is written and is reused after
+ * that, so saving the same game every tick allocates nothing.
+ * </p>
+ * @version %I% %G%
+ */
+final class StateVector {
+
+    private long[] values = new long[64];
+    private int size;
+    /** The next value to read */
+    private int at;
+
+    /** Empties the vector, to write a state into. */
+    void clear() {
+        size = 0;
+    }
+
+    /** Goes back to the first value, to read the state back. */
+    void rewind() {
+        at = 0;
+    }
+
+    /** Writes a value after the last one. */
+    void put(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    /** Writes a double as its exact bits. */
+    void put(double value) {
+        put(Double.doubleToRawLongBits(value));
+    }
+
+    /** Writes a flag as 1 or 0. */
+    void put(boolean value) {
+        put(value ? 1L : 0L);
+    }
+
+    /** Reads the next value. */
+    long getLong() {
+        return values[at++];
+    }
+
+    /** Reads the next value, written from an int. */
+    int getInt() {
+        return (int) values[at++];
+    }
+
+    /** Reads the next value, written from a double. */
+    double getDouble() {
+        return Double.longBitsToDouble(values[at++]);
+    }
+
+    /** Reads the next value, written from a flag. */
+    boolean getBoolean() {
+        return values[at++] != 0;
+    }
+
+    /** Returns how many values the vector holds.
+     * @return the number of values
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns a value by its place in the row.
+     * @param i the index, from 0
+     * @return the value
+     */
+    long get(int i) {
+        return values[i];
+    }
+
+    /**
+     * Sets a value by its place in the row, for decoding a stored state.
+     * @param i the index, from 0
+     * @param value the value
+     */
+    void set(int i, long value) {
+        values[i] = value;
+    }
+
+    /**
+     * Makes the vector a copy of another.
+     * @param other the vector to copy
+     */
+    void copy(StateVector other) {
+        if (values.length < other.size) {
+            values = Arrays.copyOf(values, other.values.length);
+        }
+        System.arraycopy(other.values, 0, values, 0, other.size);
+        size = other.size;
+        at = 0;
+    }
+
+    /**
+     * Sets how many values the vector holds, growing it if needed; the values
+     * themselves are left as they were.
+     * @param newSize the number of values
+     */
+    void setSize(int newSize) {
+        if (values.length < newSize) {
+            values = Arrays.copyOf(values, Math.max(newSize, values.length * 2));
+        }
+        size = newSize;
+        at = 0;
+    }
+}
@@ -5,9 +5,12 @@ package game;
 import java.awt.*;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.List;
 import java.util.Random;
+import java.util.function.Consumer;
 import java.util.function.DoubleSupplier;
 
 
@@ -34,46 +37,116 @@ class SugarDash extends Game {
 
 	/** Player Object */
     private Player player;
-    /** Polygon for Floor */
-    private Polygon floor;
-    /** Obstacle object */
-    private Obstacle obstacle;
+	/** The sky and floor, which never change, drawn once */
+	private Layer background;
+    /** Every obstacle, on the canvas or waiting to be spawned */
+    private ObstacleField obstacles;
     /** Stopwatch for tracking game time */
     private Stopwatch gameTimer;
-	/** Invuln powerup Object */
-	private Obstacle.InvulnerabilityPowerUp powerUp;
-
-	/** ArrayList for Props */
-	private ArrayList<Props> stars;
-    private ArrayList<Props> sugarPackets;
+	/**
+	 * Everything that moves: the stars and sugar packets, stars first so
+	 * packets draw on top, then the player, the obstacles and the powerup
+	 */
+	private Entities world;
+	/** The first star; the props are the entities from it up to the player's */
+	private int firstProp;
+	private int starKind, sugarKind;
+	/** Invuln powerup, a yellow square that is on the canvas while it is a collider */
+	private int powerUp;
 
 	// Game Constants
     private static final int FLOOR_Y = 400;
     private static final int PLAYER_X_OFFSET = 100;
     private static final int PLAYER_SIDE_LENGTH = 40;
-    private static final int COFFEE_HEIGHT = 50;
-    private static final int COFFEE_BOTTOM = 30;
-    private static final int COFFEE_TOP = 50;
 	private static final int INVULN_MS = 5000;
+	private static final int INVULN_TICKS = INVULN_MS * TICKS_PER_SECOND / 1000;
 	private static final int POWERUP_SIDE_LENGTH = 20;
+	private static final int GRID_CELL = 100;
+	/** Collision layers: the player looks for hits on the other two */
+	private static final int PLAYER_LAYER = 1, OBSTACLE_LAYER = 2, POWERUP_LAYER = 4;
+	/** How many stars fill the sky; display builds can ask for many more with -Dsugardash.stars */
+	private static final int STAR_COUNT = Integer.getInteger("sugardash.stars", 20);
+	private static final int SUGAR_COUNT = 5;
+	/** How far a star drifts left each tick; sugar packets drift a quarter of it */
+	static final double PROP_SPEED = 1;
+
+	private static final int[][] STAR_COORDS = {{10, 12, 19, 13, 15, 10, 5, 7, 1, 8, 10},
+	                                            {20, 13, 13, 9, 2, 6, 2, 9, 13, 13, 20}};
+	private static final int[][] SUGAR_COORDS = {{0,0,80,80},{0,50,50,0}};
+	/** The steps a star's brightness cycles through, so twinkling doesn't make new colors. */
+	private static final Color[] STAR_COLORS = {
+		new Color(255, 255, 155), new Color(255, 255, 180),
+		new Color(255, 255, 205), new Color(255, 255, 230)
+	};
+	private static final Color SUGAR_COLOR = new Color(255, 179, 222);
+	private static final Font SUGAR_FONT = new Font("Arial", Font.BOLD, 18);
+	/** How many ticks a star shows each brightness, once it starts twinkling. */
+	private static final int TWINKLE_TICKS = 5;
+	/** How far back practice mode winds a run when the player hits an obstacle */
+	private static final int REWIND_TICKS = 3 * TICKS_PER_SECOND;
+
+	// Colors and fonts are made once here rather than every frame
+	private static final Color SKY_COLOR = new Color(20, 20, 40);
+	private static final Color FLOOR_COLOR = new Color(118, 92, 72);
+	private static final Font HUD_FONT = new Font("Monospaced", Font.BOLD, 20);
+	private static final Font NOTICE_FONT = new Font("Monospaced", Font.PLAIN, 20);
+	private static final Font TITLE_FONT = new Font("Monospaced", Font.BOLD, 50);
+	private static final Font RESULTS_FONT = new Font("Monospaced", Font.PLAIN, 24);
+	private static final Font PROMPT_FONT = new Font("Monospaced", Font.BOLD, 30);
 
     // Game State Variables
     private int score = 0;
 	private int moveMultiplier = 0;
-    private static int highScore = 0;
-    private static double bestTimeNano = 0;
+    private int highScore = 0;
+    private double bestTimeNano = 0;
     private String finalTimeFormatted;
     private String bestTimeFormatted = "00:00:000";
+	/** Game over screen lines, built once when the game ends */
+	private String finalScoreLine, highScoreLine, finalTimeLine, bestTimeLine, percentilesLine;
+	/** The HUD is written into this each frame, so it needs no new Strings */
+	private final char[] hudLine = new char[32];
     private boolean isGameOver = false;
 	private boolean isInvulnerable = false;
-	private static double invulnStartTime = 0;
+	/** Whether the last frame drawn showed the game over screen */
+	private boolean overShown = false;
+	private long invulnStartTick = 0;
+
+	// Everything that happens in a run follows from its seed and its inputs,
+	// so a run can be recorded and played back exactly.
+	/** Input bit for a jump */
+	static final int INPUT_JUMP = 1;
+	/** Asks for a new run once the game is over; it is never recorded */
+	static final int INPUT_RESET = 2;
+	/** Keys pressed on the AWT thread, waiting for the next tick */
+	private final InputQueue keys = new InputQueue();
+	/** Picks each run's seed */
+	private final Random seeds = new Random();
+	/** This run's seed, and the generator it seeds */
+	private long seed;
+	private final Random random = new Random();
+	/** Ticks played in this run, which is also the game's clock */
+	private long ticks = 0;
+	/** Inputs pressed since the last tick, applied at the start of the next */
+	private int pendingInput = 0;
+	/** Where finished runs are saved, or null; set with -Dsugardash.record=dir */
+	private File recordDir;
+	/** The run being recorded, if recordDir is set */
+	private Replay recording;
+	/** Where finished runs are kept between launches, or null; see -Dsugardash.history */
+	private RunHistory history;
+	/** The other players being raced, or null; see -Dsugardash.race */
+	private GhostLink ghosts;
+	/** The last few seconds of states in practice mode, or null; see -Dsugardash.practice */
+	private RewindBuffer rewind;
+	/** Each tick's state is saved into this before it is kept */
+	private final StateVector state = new StateVector();
 
 
 	/**
      * Stopwatch is a class defining a stopwatch for keeping track of game time.
      * It is an inner class of <a href="#{@link}">{@link SugarDash}</a>.
 	 * It is used to track the time elapsed between its starting and stopping,
-	 * and stores previous times.
+	 * and keeps statistics of previous times.
      * @author Augniv Mitra
      * @author James Hui
      * @version %I% %G%
@@ -89,22 +162,21 @@ class SugarDash extends Game {
 		/** Elasped Time */
 		private double elapsedTime;
 
-		/** Saved Times */
-		private static ArrayList<Double> timeArr; 
+		/** Statistics of every time stopped so far, in constant memory */
+		private final TimeStats stats = new TimeStats();
 
 		public DoubleSupplier getElapsedTimeNano;
 
 		/**
-		 * Initializes ArrayList of times, and uses lambda expression for
+		 * Initializes the stopwatch, and uses lambda expression for
 		 * getting the amount of time elapsed between start and end.
 		 */
 		public Stopwatch(){
 			startTime = 0;
 			isRunning = false;
-			timeArr = new ArrayList<Double>();
 			getElapsedTimeNano = () -> {
 				if (isRunning){
-					return System.nanoTime() - startTime;
+					return now() - startTime;
 				}
 				return elapsedTime;
 		};
@@ -113,15 +185,15 @@ class SugarDash extends Game {
 
 		/** Starts the stopwatch tracking time elapsed. */
 		public void start(){
-			startTime = System.nanoTime();
+			startTime = now();
 			isRunning = true;
 		}
 
 		/** Stops the stopwatch from counting more time. */
 		public void stop(){
 			if (isRunning){
-				elapsedTime = System.nanoTime() - startTime;
-				timeArr.add(elapsedTime);
+				elapsedTime = now() - startTime;
+				stats.add(elapsedTime);
 				isRunning = false;
 			}
 		}
@@ -135,12 +207,34 @@ class SugarDash extends Game {
 			isRunning = false;
 		}
 
+		/**
+		 * Reads the game clock, which counts whole ticks rather than wall time so
+		 * that a played-back run times the same as the original.
+		 * @return nanoseconds of play in this run
+		 */
+		private double now(){
+			return ticks * TICK_NANOS;
+		}
+
 		/**
 		 * Formats the input time into human-readable format
 		 * @param totalTimeNano double representation of the system time in nanoseconds
 		 * @return String representation of <code>totalTimeNano</code> in format minutes:seconds:milliseconds
 		 */
 		public String getFormattedTime(double totalTimeNano){
+			char[] text = new char[24];
+			return new String(text, 0, putFormattedTime(totalTimeNano, text, 0));
+		}
+
+		/**
+		 * Writes the input time into <code>text</code> in the same format as
+		 * {@link #getFormattedTime(double)}, without making a String.
+		 * @param totalTimeNano double representation of the system time in nanoseconds
+		 * @param text where the formatted time is written
+		 * @param at the index in <code>text</code> to start writing at
+		 * @return the index just past the last character written
+		 */
+		public int putFormattedTime(double totalTimeNano, char[] text, int at){
 			
 			long totalMillis = (long) (totalTimeNano/1000000);
 
@@ -148,43 +242,64 @@ class SugarDash extends Game {
 			long seconds = (totalMillis / 1000) % 60;
 			long millis = totalMillis % 1000;
 
-			return String.format("%02d:%02d:%03d", minutes, seconds, millis);
+			at = Chars.putDigits(minutes, 2, text, at);
+			text[at++] = ':';
+			at = Chars.putDigits(seconds, 2, text, at);
+			text[at++] = ':';
+			return Chars.putDigits(millis, 3, text, at);
 		}
 
 		/**
 		 * gets the longest time the player has survived
 		 * @return double representation of the longest time that the player has survived
 		 */
-		public static double getLongestTime(){
-			if (timeArr.isEmpty()){
-				return 0.0;
-			}
-			return Collections.max(timeArr);
+		public double getLongestTime(){
+			return stats.getMax();
+		}
+
+		/**
+		 * gets the statistics of every time the stopwatch has been stopped
+		 * @return the running statistics of previous times
+		 */
+		public TimeStats getStats(){
+			return stats;
 		}
 
 	}
 
 	/**
 	 * Initializes all objects necessary for the gameplay. This includes the player as Player,
-	 * the obstacles as Obstacle, the game's timer as Stopwatch, and the obstacle as 
-	 * InvulnerabilityPowerup. It also creates the polygon representation of the floor to
-	 * be drawn in paint. It also calls <code>{initializeProps}<code> to
+	 * the obstacles as ObstacleField, the game's timer as Stopwatch, and the
+	 * invulnerability powerup, all in one set of Entities. It also draws the sky and
+	 * floor once, to be copied in paint. It also calls <code>{initializeProps}<code> to
 	 * create all props which will be drawn in paint.
 	 */
 	public SugarDash() {
 		super("Sugar Dash!",800,600);
-    	
-		player = new Player(new Point(PLAYER_X_OFFSET, FLOOR_Y-PLAYER_SIDE_LENGTH), PLAYER_SIDE_LENGTH);
-		obstacle = new Obstacle(new Point(800, FLOOR_Y - COFFEE_HEIGHT), COFFEE_TOP, COFFEE_BOTTOM, COFFEE_HEIGHT);
-		gameTimer = new Stopwatch();
-		powerUp = obstacle.new InvulnerabilityPowerUp(new Point(800, FLOOR_Y - POWERUP_SIDE_LENGTH), POWERUP_SIDE_LENGTH);
-
-		Point[] floorShape = { new Point(0,0), new Point(width, 0), new Point(width , height - FLOOR_Y), new Point(0, height - FLOOR_Y)};
-		floor = new Polygon(floorShape, new Point(0,FLOOR_Y), 0);
-
-		initializeProps();
-
-		gameTimer.start();
+		String record = System.getProperty("sugardash.record");
+		if (record != null) {
+			recordDir = new File(record);
+			recordDir.mkdirs();
+		}
+		File historyFile = new File(System.getProperty("sugardash.history",
+				new File(System.getProperty("user.home"), ".sugardash-history").getPath()));
+		try {
+			history = new RunHistory(historyFile);
+			highScore = history.getBestScore();
+			bestTimeNano = history.getBestNanos();
+		} catch (IOException exc) {
+			System.err.println("Can't keep run history in " + historyFile + ": " + exc.getMessage());
+		}
+		setUp(true);
+		setPractice(Boolean.getBoolean("sugardash.practice"));
+		String race = System.getProperty("sugardash.race");
+		if (race != null) {
+			try {
+				race(Integer.getInteger("sugardash.race.port", GhostRelay.PORT), Integer.parseInt(race));
+			} catch (IOException exc) {
+				System.err.println("Can't race ghosts: " + exc.getMessage());
+			}
+		}
 
 		this.setFocusable(true);
 		this.requestFocus();
@@ -192,49 +307,229 @@ class SugarDash extends Game {
 		this.addKeyListener(new KeyAdapter() {
 			@Override
 			public void keyPressed(KeyEvent e){
-				if (e.getKeyCode() == KeyEvent.VK_UP || e.getKeyChar() == 'w' || e.getKeyChar() == 'W' || e.getKeyCode() == KeyEvent.VK_SPACE){
-					player.jump();
-				} else if ((e.getKeyCode() == 'r' || e.getKeyCode() == 'R') && isGameOver){
-					resetGame();
-				}
+				handleKey(e);
 			}
 		});
-
-		
   	}
 
 	/**
-	 * Creates & stores 20 stars and 5 props in their respective <Code>ArrayLists</code>
-	 * with random x-positions and bounded random y-positions.
+	 * Initializes a headless game with no window or keyboard, for benchmarks
+	 * and simulations that call {@link #tick()} and {@link #paint(Graphics)}
+	 * themselves. Every game keeps its own state, so any number can play at
+	 * once on different threads.
+	 * @param inWidth width of the playfield, in pixels
+	 * @param inHeight height of the playfield, in pixels
+	 */
+	SugarDash(int inWidth, int inHeight) {
+		super(inWidth, inHeight);
+		setUp(false);
+	}
+
+	/**
+	 * Creates the props, player, obstacles, powerup and floor, and starts the timer.
+	 * @param ahead whether to lay out levels ahead on a background thread
+	 */
+	private void setUp(boolean ahead) {
+		world = new Entities(STAR_COUNT + SUGAR_COUNT + 2 + ObstacleField.POOL_SIZE,
+		                     new SpatialGrid(width, height, GRID_CELL));
+		createProps();
+		player = new Player(world, new Point(PLAYER_X_OFFSET, FLOOR_Y-PLAYER_SIDE_LENGTH), PLAYER_SIDE_LENGTH);
+		obstacles = new ObstacleField(world, OBSTACLE_LAYER, FLOOR_Y, PLAYER_X_OFFSET, PLAYER_SIDE_LENGTH, ahead);
+		gameTimer = new Stopwatch();
+		powerUp = world.add(800, FLOOR_Y - POWERUP_SIDE_LENGTH);
+		world.setShape(powerUp, world.addShape(new Entities.Shape(new Point(0, 0),
+				new Point(POWERUP_SIDE_LENGTH, 0), new Point(POWERUP_SIDE_LENGTH, POWERUP_SIDE_LENGTH),
+				new Point(0, POWERUP_SIDE_LENGTH))));
+
+		background = new Layer(this, width, height, brush -> {
+			brush.setColor(SKY_COLOR);
+			brush.fillRect(0, 0, width, height);
+			brush.setColor(FLOOR_COLOR);
+			brush.fillRect(0, FLOOR_Y, width, height - FLOOR_Y);
+		});
+
+		resetGame();
+	}
+
+	/**
+	 * Turns practice mode on or off. In practice mode a run never ends:
+	 * hitting an obstacle winds the run back {@value #REWIND_TICKS} ticks
+	 * instead, to try that stretch again. Practice runs aren't recorded, since
+	 * a recording can't be played back through a rewind.
+	 * @param on true for practice mode
+	 */
+	void setPractice(boolean on) {
+		rewind = on ? new RewindBuffer() : null;
+		if (on) {
+			recording = null;
+		}
+	}
+
+	/**
+	 * Races this game against everyone else in a match on a
+	 * <a href="#{@link}">{@link GhostRelay}</a> on this machine. From then on
+	 * every tick sends the player's position and score, and the others are
+	 * drawn as ghosts.
+	 * @param port the relay's loopback port
+	 * @param match which match to join
+	 * @return the link to the relay
+	 * @throws IOException if the socket can't be opened
+	 */
+	GhostLink race(int port, int match) throws IOException {
+		ghosts = new GhostLink(port, match, player.getShape(), PLAYER_X_OFFSET, PLAYER_SIDE_LENGTH, width);
+		return ghosts;
+	}
+
+	/**
+	 * Reacts to a key press. Called on the AWT event thread, so it touches no
+	 * game state: game keys are stamped and queued for the next tick.
+	 * @param e the key that was pressed
+	 */
+	private void handleKey(KeyEvent e){
+		if (e.getKeyCode() == KeyEvent.VK_UP || e.getKeyChar() == 'w' || e.getKeyChar() == 'W' || e.getKeyCode() == KeyEvent.VK_SPACE){
+			keys.offer(INPUT_JUMP, System.nanoTime());
+		} else if (e.getKeyCode() == 'r' || e.getKeyCode() == 'R'){
+			keys.offer(INPUT_RESET, System.nanoTime());
+		} else if (e.getKeyCode() == KeyEvent.VK_F3){
+			profiler.toggleOverlay();
+		}
+	}
+
+	/**
+	 * Adds <code>STAR_COUNT</code> stars and 5 sugar packets to the entities,
+	 * drifting left and looping back to the right edge once they are off the
+	 * canvas. They are put in place as each run starts.
+	 */
+	private void createProps() {
+		starKind = world.addKind(starKind());
+		sugarKind = world.addKind(sugarKind());
+		firstProp = world.size();
+		for (int i = 0; i < STAR_COUNT + SUGAR_COUNT; i++) {
+			int prop = world.add(0, 0);
+			world.setVelocity(prop, i < STAR_COUNT ? -PROP_SPEED : -PROP_SPEED / 4, 0);
+			world.setWrap(prop, -80, width);
+			world.setLook(prop, i < STAR_COUNT ? starKind : sugarKind);
+		}
+	}
+
+	/**
+	 * Puts the <code>STAR_COUNT</code> stars and 5 sugar packets at random
+	 * x-positions and bounded random y-positions, with their looks started over.
 	 */
 	private void initializeProps() {
-        stars = new ArrayList<>();
-        sugarPackets = new ArrayList<>();
-        Random rand = new Random();
+        Random rand = random;
 
-        // Create 10 stars with random positions in the sky
-        for (int i = 0; i < 20; i++) {
+        // Put the stars at random positions in the sky
+        for (int i = 0; i < STAR_COUNT; i++) {
             int x = rand.nextInt(width);
             int y = rand.nextInt(300);
-            stars.add(new Props("star", new Point(x, y)));
+            placeProp(firstProp + i, starKind, x, y);
         }
 
-        // Create 5 sugar packets with random positions on the floor
-        for (int i = 0; i < 5; i++) {
+        // Put 5 sugar packets at random positions on the floor
+        for (int i = STAR_COUNT; i < STAR_COUNT + SUGAR_COUNT; i++) {
             int x = rand.nextInt(width);
             int y = FLOOR_Y + rand.nextInt(height - FLOOR_Y - 50);
-            sugarPackets.add(new Props("sugar", new Point(x, y)));
+            placeProp(firstProp + i, sugarKind, x, y);
         }
     }
 
-	/** Resets Game to initial state, overwriting gamestate variables.*/
-	private void resetGame() {
-		player.position.x = PLAYER_X_OFFSET;
-        player.position.y = FLOOR_Y - PLAYER_SIDE_LENGTH;
-		player.setRotation(0);
-		obstacle.setHasBeenScored(false);
-		obstacle.position.x = 800;
-		powerUp.setVisibility(false);
+	/**
+	 * Puts a prop somewhere, at the start of its animation.
+	 * @param prop the prop's entity
+	 * @param kind the prop's kind
+	 * @param x the x-position, in pixels
+	 * @param y the y-position, in pixels
+	 */
+	private void placeProp(int prop, int kind, double x, double y) {
+		world.place(prop, x, y, 0);
+		world.setLook(prop, kind);
+	}
+
+	/**
+	 * Makes the kind of entity that is a star: plain yellow at first, then
+	 * twinkling through {@link #STAR_COLORS} for as long as it lives.
+	 * @return a new kind, with its own sprites
+	 */
+	static Entities.Kind starKind() {
+		int[][] shape = fromOrigin(STAR_COORDS);
+		Color[] frames = {Color.YELLOW, STAR_COLORS[1], STAR_COLORS[2], STAR_COLORS[3], STAR_COLORS[0]};
+		List<Consumer<Graphics>> painters = new ArrayList<>();
+		for (Color color : frames) {
+			painters.add(picture -> {
+				picture.setColor(color);
+				picture.fillPolygon(shape[0], shape[1], shape[0].length);
+			});
+		}
+		return new Entities.Kind(maxOf(shape[0]), maxOf(shape[1]), TWINKLE_TICKS, 1, painters);
+	}
+
+	/**
+	 * Makes the kind of entity that is a sugar packet with its label.
+	 * @return a new kind, with its own sprite
+	 */
+	static Entities.Kind sugarKind() {
+		int[][] shape = fromOrigin(SUGAR_COORDS);
+		return new Entities.Kind(maxOf(shape[0]), maxOf(shape[1]), picture -> {
+			picture.setColor(SUGAR_COLOR);
+			picture.fillPolygon(shape[0], shape[1], shape[0].length);
+			picture.setColor(Color.RED);
+			picture.setFont(SUGAR_FONT);
+			picture.drawString("SUGAR", 8, 32);
+		});
+	}
+
+	/**
+	 * Copies a shape given as x and y arrays, shifted so its smallest x and y are zero.
+	 * @param coords 2d array consisting of two arrays, x and y
+	 * @return the shifted copy
+	 */
+	private static int[][] fromOrigin(int[][] coords) {
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+		for (int i = 0; i < coords[0].length; i++) {
+			minX = Math.min(minX, coords[0][i]);
+			minY = Math.min(minY, coords[1][i]);
+		}
+		int[][] shifted = new int[2][coords[0].length];
+		for (int i = 0; i < coords[0].length; i++) {
+			shifted[0][i] = coords[0][i] - minX;
+			shifted[1][i] = coords[1][i] - minY;
+		}
+		return shifted;
+	}
+
+	private static int maxOf(int[] values) {
+		int max = 0;
+		for (int value : values) {
+			max = Math.max(max, value);
+		}
+		return max;
+	}
+
+	/** Resets Game to initial state with a fresh seed, overwriting gamestate variables.*/
+	void resetGame() {
+		resetGame(seeds.nextLong());
+	}
+
+	/**
+	 * Resets Game to initial state, overwriting gamestate variables. Two runs reset
+	 * with the same seed and given the same inputs at the same ticks play out the same.
+	 * @param runSeed the seed for everything random in the run
+	 */
+	void resetGame(long runSeed) {
+		seed = runSeed;
+		random.setSeed(runSeed);
+		ticks = 0;
+		pendingInput = 0;
+		invulnStartTick = 0;
+		recording = recordDir == null || rewind != null ? null : new Replay(runSeed);
+		if (rewind != null) {
+			rewind.clear();
+		}
+
+		player.reset(PLAYER_X_OFFSET, FLOOR_Y - PLAYER_SIDE_LENGTH);
+		obstacles.reset(runSeed);
+		hidePowerUp();
 		isInvulnerable = false;
 
 		score = 0;
@@ -249,6 +544,134 @@ class SugarDash extends Game {
 
 	}
 
+	/**
+	 * Queues an input for the next tick, the same way a key press does.
+	 * @param input input bits such as {@link #INPUT_JUMP}
+	 */
+	void press(int input) {
+		pendingInput |= input;
+	}
+
+	/**
+	 * Writes everything a tick can change: the clock, which the timer runs
+	 * from, the score and speed, the invulnerability, the player and
+	 * obstacles, and every entity.
+	 * @param into where the state is written, after whatever is there
+	 */
+	void save(StateVector into) {
+		into.put(ticks);
+		into.put(score);
+		into.put(moveMultiplier);
+		into.put(isInvulnerable);
+		into.put(invulnStartTick);
+		player.save(into);
+		obstacles.save(into);
+		world.save(into);
+	}
+
+	/**
+	 * Puts the run back as {@link #save(StateVector)} wrote it, earlier in
+	 * the same run.
+	 * @param from where the state is read from, from its next value
+	 */
+	void load(StateVector from) {
+		ticks = from.getLong();
+		score = from.getInt();
+		moveMultiplier = from.getInt();
+		isInvulnerable = from.getBoolean();
+		invulnStartTick = from.getLong();
+		player.load(from);
+		obstacles.load(from);
+		world.load(from);
+		pendingInput = 0;
+	}
+
+	/**
+	 * Winds the run back {@value #REWIND_TICKS} ticks, or as far as the
+	 * practice states go.
+	 * @return false if there was nothing to wind back to
+	 */
+	private boolean windBack() {
+		if (!rewind.restore(REWIND_TICKS, state)) {
+			return false;
+		}
+		state.rewind();
+		load(state);
+		return true;
+	}
+
+	/** Returns this run's score so far.
+	 * @return obstacles cleared in this run
+	 */
+	int getScore() {
+		return score;
+	}
+
+	/** Returns how many ticks this run has lasted.
+	 * @return ticks played since the last reset
+	 */
+	long getTicks() {
+		return ticks;
+	}
+
+	/**
+	 * Changes how hard the game is. Obstacles change speed from the next tick
+	 * on, but the level is laid out as a run starts, so set this before
+	 * {@link #resetGame(long)}.
+	 * @param tuning the new difficulty
+	 */
+	void setDifficulty(Difficulty tuning) {
+		obstacles.setDifficulty(tuning);
+	}
+
+	/**
+	 * Estimates how many ticks until the front edge of the nearest obstacle
+	 * ahead reaches the player, at the speed it is going now. Used by
+	 * simulated players.
+	 * @return ticks until contact, or infinity if no obstacle is ahead
+	 */
+	double ticksUntilObstacle() {
+		return obstacles.ticksUntil(world.getX(player.getEntity()) + PLAYER_SIDE_LENGTH, moveMultiplier);
+	}
+
+	/** Sends the powerup in from the right edge of the canvas. */
+	void spawnPowerUp() {
+		world.place(powerUp, 800, FLOOR_Y - POWERUP_SIDE_LENGTH, 0);
+		world.setStyle(powerUp, Color.YELLOW);
+		world.setCollider(powerUp, POWERUP_LAYER, 0);
+	}
+
+	/** Takes the powerup off the canvas and stops it, until it is sent in again. */
+	private void hidePowerUp() {
+		world.detach(powerUp, Entities.VELOCITY | Entities.STYLE | Entities.COLLIDER);
+	}
+
+	/**
+	 * Applies every key pressed since the last tick, in order. A jump waits in
+	 * pendingInput like any other input; a reset only counts once the game is over.
+	 */
+	private void drainKeys() {
+		while (keys.poll()) {
+			if (keys.input() == INPUT_RESET) {
+				if (isGameOver) {
+					resetGame();
+				}
+			} else if (!isGameOver) {
+				press(keys.input());
+				if (unshownInput == 0) {
+					unshownInput = keys.stamp();
+				}
+			}
+		}
+	}
+
+	/** Returns whether the current run has ended.
+	 * @return true if the player has hit an obstacle and not yet restarted
+	 */
+	boolean isGameOver() {
+		return isGameOver;
+	}
+
 	/** Handles logic for when the game ends.
 	 * Displays the user's current run time & score, their best time & score, and prompts
 	 * them to restart the game.
@@ -257,147 +680,244 @@ class SugarDash extends Game {
 		isGameOver = true;
 		gameTimer.stop();
 
-		bestTimeNano = Stopwatch.getLongestTime();
-		bestTimeFormatted = gameTimer.getFormattedTime(bestTimeNano);
-
+		bestTimeNano = Math.max(bestTimeNano, gameTimer.getLongestTime());
 		if (score > highScore){
 			highScore = score;
 		}
+		if (history != null){
+			try {
+				history.append(score, (long) gameTimer.getElapsedTimeNano.getAsDouble(), seed,
+				               System.currentTimeMillis());
+			} catch (IOException exc) {
+				System.err.println("Can't save the run to the history: " + exc.getMessage());
+				history = null;
+			}
+		}
+		bestTimeFormatted = gameTimer.getFormattedTime(bestTimeNano);
 
 
 		finalTimeFormatted = gameTimer.getFormattedTime(gameTimer.getElapsedTimeNano.getAsDouble());
+
+		finalScoreLine = "Final Score: " + score;
+		highScoreLine = "High Score:  " + highScore;
+		finalTimeLine = "Final Time:  " + finalTimeFormatted;
+		bestTimeLine = "Best Time:   " + bestTimeFormatted;
+		TimeStats times = gameTimer.getStats();
+		percentilesLine = "p50 " + gameTimer.getFormattedTime(times.getPercentile(0.50))
+		                + " p90 " + gameTimer.getFormattedTime(times.getPercentile(0.90))
+		                + " p99 " + gameTimer.getFormattedTime(times.getPercentile(0.99));
+
+		if (recording != null) {
+			recording.finish(ticks, score);
+			File file = new File(recordDir, "run-" + Long.toHexString(seed) + ".sdr");
+			try {
+				recording.save(file);
+			} catch (IOException exc) {
+				System.err.println("Can't save the run to " + file + ": " + exc.getMessage());
+			}
+		}
 	}
   
 	
-	@Override
 	/**
-	 * Handles game logic for drawing graphics onto canvas, painting the floor,
-	 * player, both prop types, obstacles, powerups, and game-over text. It also
-	 * checks for collision between the player and obstacles or powerups, and handles
-	 * their respective logic by modifying game state variables. When the game is
-	 * over, it displays the game over text including current/best scores and times.
-	 * @param brush Used to paint on the game canvas
+	 * Advances the game by one fixed tick. Sets how the player, obstacles and
+	 * powerup move, moves every entity, checks for collision between the player
+	 * and obstacles or powerups,
+	 * and handles their respective logic by modifying game state variables.
+	 * In practice mode it also keeps the state it ends with, and a collision
+	 * winds the run back rather than ending it.
 	 */
-	public void paint(Graphics brush) {
-		if(!isGameOver){
-			brush.setColor(new Color (20,20,40));
-			brush.fillRect(0,0,width,height);
-			
-			paintFloor(brush, floor, new Color(118,92,72));
+	@Override
+	public void tick() {
+		drainKeys();
+		if (ghosts != null) {
+			// Ghosts still hear from a finished run, so they can see it is over
+			int body = player.getEntity();
+			ghosts.exchange(obstacles.getScrolled(), world.getY(body), world.getRotation(body), score, isGameOver);
+		}
+		if(isGameOver){
+			return;
+		}
 
-			for (Props star : stars) {
-                star.update(0);
-                star.paint(brush);
-            }
+		if (pendingInput != 0) {
+			if (recording != null) {
+				recording.record(ticks, pendingInput);
+			}
+			if ((pendingInput & INPUT_JUMP) != 0) {
+				player.jump();
+			}
+			pendingInput = 0;
+		}
+		ticks++;
+
+		profiler.begin(FrameProfiler.Phase.ENTITIES);
+		// the powerup keeps pace with the obstacles one tick on
+		player.fall();
+		obstacles.setPace(moveMultiplier);
+		if (world.has(powerUp, Entities.COLLIDER)) {
+			world.setVelocity(powerUp, -obstacles.speed(moveMultiplier + 1), 0);
+		}
+		world.tick();
 
-			for (Props packet : sugarPackets) {
-                packet.update(0);
-                packet.paint(brush);
-            }
-			
-			player.update(FLOOR_Y);
-			player.paint(brush);
+		player.land(FLOOR_Y);
+		obstacles.update(moveMultiplier);
+		moveMultiplier += 1;
+		if (world.has(powerUp, Entities.COLLIDER) && world.getX(powerUp) <= -POWERUP_SIDE_LENGTH) {
+			hidePowerUp();
+		}
+		profiler.end(FrameProfiler.Phase.ENTITIES);
+
+		profiler.begin(FrameProfiler.Phase.COLLISION);
+		// Only the player looks for hits; obstacles can't hurt it while it is invulnerable
+		world.setCollider(player.getEntity(), PLAYER_LAYER, isInvulnerable ? POWERUP_LAYER : POWERUP_LAYER | OBSTACLE_LAYER);
+		boolean hitObstacle = false, hitPowerUp = false;
+		for (int i = 0, hits = world.collide(); i < hits; i++) {
+			if (world.hitTarget(i) == powerUp) {
+				hitPowerUp = true;
+			} else {
+				hitObstacle = true;
+			}
+		}
 
-			obstacle.update(moveMultiplier);
-			moveMultiplier += 1;
-			obstacle.paint(brush);
+		if(hitObstacle){
+			if (rewind != null && windBack()) {
+				profiler.end(FrameProfiler.Phase.COLLISION);
+				return;
+			}
+			gameOver();
+		}
 
-			powerUp.update(moveMultiplier);
-			powerUp.paint(brush);
+		// powerup collision; it is only a collider while it is visible
+		if(hitPowerUp){
+			isInvulnerable = true;
+			invulnStartTick = ticks;
+			hidePowerUp();
+		}
 
-			if(!isInvulnerable && player.collides(obstacle)){
-				gameOver();
-			}
+		score += obstacles.scorePassed(PLAYER_X_OFFSET);
+		// the level places powerups to come in as the player passes a cup
+		if(obstacles.takePowerUps() > 0){
+			spawnPowerUp();
+		}
 
-            if (obstacle.getXPos() < PLAYER_X_OFFSET && !obstacle.getHasBeenScored()) {
-                score++;
-                obstacle.setHasBeenScored(true);
-				if(Math.random() < 0.1){
-					powerUp.moveToStart();
-					powerUp.setVisibility(true);
-					powerUp.paint(brush);
-					// System.out.println("Random check");
-				}
-            }
+		// when time runs out, change state back
+		if(isInvulnerable && ticks > invulnStartTick + INVULN_TICKS){
+			isInvulnerable = false;
+		}
+		profiler.end(FrameProfiler.Phase.COLLISION);
 
-			
+		if (rewind != null && !isGameOver) {
+			state.clear();
+			save(state);
+			rewind.record(state);
+		}
+	}
 
-			// powerup collision | getVisibility returns true if visible
-			if(player.collides(powerUp) && powerUp.getVisibility()){
-				isInvulnerable = true;
-				invulnStartTime = System.currentTimeMillis();
-				powerUp.setVisibility(false);
-				powerUp.paint(brush);
+	/**
+	 * Handles drawing graphics onto canvas, painting the floor, player, both prop
+	 * types, obstacles, powerups, any ghosts being raced, and game-over text. The sky and floor come from a
+	 * prepared layer and everything else from cached sprites. Everything that moves is drawn
+	 * <code>alpha</code> of the way between the last two ticks. When the game is
+	 * over, it displays the game over text including current/best scores and times.
+	 * @param brush Used to paint on the game canvas
+	 */
+	@Override
+	public void paint(Graphics brush) {
+		if(!isGameOver){
+			profiler.begin(FrameProfiler.Phase.DRAW);
+			background.draw(brush, 0, 0);
+
+			// ghosts go between the props and the player
+			int body = player.getEntity();
+			world.paint(brush, alpha, 0, body);
+			if (ghosts != null) {
+				ghosts.paint(brush, alpha);
 			}
+			
+			world.paint(brush, alpha, body, world.size());
+			profiler.end(FrameProfiler.Phase.DRAW);
 
+			profiler.begin(FrameProfiler.Phase.HUD);
 			// display to user that they are invulnerable
 			if(isInvulnerable){
 				brush.setColor(Color.WHITE);
-				brush.setFont(new Font("Monospaced", Font.PLAIN, 20));
+				brush.setFont(NOTICE_FONT);
 				brush.drawString("Invulnerable!", width / 2 - 50, height / 2 - 100);
 			}
 
-			// when time runs out, change state back
-			if(isInvulnerable && System.currentTimeMillis() > invulnStartTime + INVULN_MS){
-				isInvulnerable = false;
-
-			}
-
-			
 			brush.setColor(Color.WHITE);
-            brush.setFont(new Font("Monospaced", Font.BOLD, 20));
-            brush.drawString("Score: " + score, width - 250, 30);
-            brush.drawString("Time: " + gameTimer.getFormattedTime(gameTimer.getElapsedTimeNano.getAsDouble()), width - 250, 55);
+            brush.setFont(HUD_FONT);
+            int end = Chars.putText("Score: ", hudLine, 0);
+            end = Chars.putDigits(score, 1, hudLine, end);
+            brush.drawChars(hudLine, 0, end, width - 250, 30);
+            end = Chars.putText("Time: ", hudLine, 0);
+            end = gameTimer.putFormattedTime(gameTimer.getElapsedTimeNano.getAsDouble(), hudLine, end);
+            brush.drawChars(hudLine, 0, end, width - 250, 55);
+            if (ghosts != null) {
+                end = Chars.putText("Ahead: ", hudLine, 0);
+                end = Chars.putDigits(ghosts.ahead(), 1, hudLine, end);
+                hudLine[end++] = '/';
+                end = Chars.putDigits(ghosts.racing(), 1, hudLine, end);
+                brush.drawChars(hudLine, 0, end, width - 250, 80);
+            }
+			profiler.end(FrameProfiler.Phase.HUD);
 
 		}
 		else{
-            brush.setColor(new Color(20, 20, 40));
+            brush.setColor(SKY_COLOR);
             brush.fillRect(0, 0, width, height);
             
             brush.setColor(Color.WHITE);
-            brush.setFont(new Font("Monospaced", Font.BOLD, 50));
+            brush.setFont(TITLE_FONT);
             brush.drawString("Game Over!", width / 2 - 150, height / 2 - 100);
 
-            brush.setFont(new Font("Monospaced", Font.PLAIN, 24));
-            brush.drawString("Final Score: " + score, width / 2 - 150, height / 2 - 20);
-            brush.drawString("High Score:  " + highScore, width / 2 - 150, height / 2 + 10);
-            brush.drawString("Final Time:  " + finalTimeFormatted, width / 2 - 150, height / 2 + 50);
-            // Get best time directly from the timer's static methods
-            brush.drawString("Best Time:   " + bestTimeFormatted, width / 2 - 150, height / 2 + 80);
+            brush.setFont(RESULTS_FONT);
+            brush.drawString(finalScoreLine, width / 2 - 150, height / 2 - 20);
+            brush.drawString(highScoreLine, width / 2 - 150, height / 2 + 10);
+            brush.drawString(finalTimeLine, width / 2 - 150, height / 2 + 50);
+            // Best time and percentiles were taken from the timer's statistics at game over
+            brush.drawString(bestTimeLine, width / 2 - 150, height / 2 + 80);
+            brush.setFont(NOTICE_FONT);
+            brush.drawString(percentilesLine, width / 2 - 150, height / 2 + 110);
 
-            brush.setFont(new Font("Monospaced", Font.BOLD, 30));
+            brush.setFont(PROMPT_FONT);
             brush.drawString("Press 'R' to Restart", width / 2 - 180, height / 2 + 150);
 		}
 
   	}
 	
 	/**
-	 * Paints the game's ground onto the canvas, given a brush,
-	 * a Polygon to paint, and the color of the polygon
-	 * @param brush used to paint on the game's canvas
-	 * @param p the polygon to be put as the floor, should be a rectangle
-	 * @param c the color that the floor should be
+	 * Adds everything that is drawn over the sky and floor this frame to the
+	 * region: props, ghosts, player, obstacles, powerup and HUD text. The game over
+	 * screen covers everything, but it doesn't change, so the whole canvas is
+	 * only added on the frames the game ends and restarts.
+	 * @param region the region being drawn this frame
 	 */
-    public void paintFloor(Graphics brush, Polygon p, Color c){
-        // Get current verticies
-        Point[] points = p.getPoints();
-        int[] xs = new int[points.length];
-        int[] ys = new int[points.length];
-        // Update points
-        for (int i = 0; i < points.length; i++) {
-            xs[i] = (int) points[i].x;
-            ys[i] = (int) points[i].y;
-        }
-        // Set Brush Color
-        brush.setColor(c);
-        // Draw Shape 
-        brush.fillPolygon(xs, ys, points.length);
-
-    }
+	@Override
+	protected void collectDrawn(DirtyRegion region) {
+		if (isGameOver != overShown) {
+			overShown = isGameOver;
+			region.addFull();
+			return;
+		}
+		if (isGameOver) {
+			return;
+		}
+		int body = player.getEntity();
+		world.collectDrawn(region, alpha, 0, body);
+		if (ghosts != null) {
+			ghosts.collectDrawn(region, alpha);
+		}
+		world.collectDrawn(region, alpha, body, world.size());
+		if (isInvulnerable) {
+			region.add(width / 2 - 50, height / 2 - 120, 160, 28);
+		}
+		region.add(width - 250, 10, 250, ghosts == null ? 52 : 77);
+	}
 
   
 	public static void main (String[] args) {
    		SugarDash a = new SugarDash();
-		a.repaint();
+		a.start();
   }
 }
\ No newline at end of file
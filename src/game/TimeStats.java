@@ -0,0 +1,97 @@
+package game;
+
+/**
+ * TimeStats sums up a stream of times without keeping them: a count, the
+ * shortest, longest and mean, and a histogram for percentiles. The histogram
+ * has exact buckets for each millisecond up to {@value #LINEAR} ms, and above
+ * that splits every doubling into {@value #SUB_BUCKETS} buckets, so any
+ * percentile is within about 3% of the true value. It takes the same few
+ * kilobytes after a billion times as after one.
+ * @version %I% %G%
+ */
+class TimeStats {
+
+    private static final int LINEAR = 64;
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // First exponent past the linear range; LINEAR is 2^6.
+    private static final int FIRST_EXPONENT = 6;
+    private static final int BUCKETS = LINEAR + (63 - FIRST_EXPONENT) * SUB_BUCKETS;
+
+    private final long[] buckets = new long[BUCKETS];
+    private long count;
+    private double min = Double.POSITIVE_INFINITY, max, sum;
+
+    /**
+     * Adds a time.
+     * @param nanos the time, in nanoseconds
+     */
+    void add(double nanos) {
+        count++;
+        sum += nanos;
+        min = Math.min(min, nanos);
+        max = Math.max(max, nanos);
+        buckets[bucket((long) (nanos / 1_000_000))]++;
+    }
+
+    /** Returns how many times have been added.
+     * @return the number of times
+     */
+    long getCount() {
+        return count;
+    }
+
+    /** Returns the shortest time added.
+     * @return the shortest time in nanoseconds, or 0 if there are none
+     */
+    double getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    /** Returns the longest time added.
+     * @return the longest time in nanoseconds, or 0 if there are none
+     */
+    double getMax() {
+        return max;
+    }
+
+    /** Returns the mean of the times added.
+     * @return the mean time in nanoseconds, or 0 if there are none
+     */
+    double getMean() {
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * Returns the time that a fraction of the times are at or below, to the
+     * bottom of its histogram bucket. Never above {@link #getMax()}.
+     * @param fraction between 0 and 1, such as 0.99 for the 99th percentile
+     * @return the time in nanoseconds, or 0 if there are none
+     */
+    double getPercentile(double fraction) {
+        if (count == 0) return 0;
+        long wanted = Math.max(1, (long) Math.ceil(count * fraction));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= wanted) {
+                return Math.min(max, Math.max(min, lowestMillis(i) * 1_000_000.0));
+            }
+        }
+        return max;
+    }
+
+    private static int bucket(long millis) {
+        if (millis < LINEAR) return (int) Math.max(0, millis);
+        int exponent = 63 - Long.numberOfLeadingZeros(millis);
+        int sub = (int) (millis >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + sub;
+    }
+
+    private static long lowestMillis(int bucket) {
+        if (bucket < LINEAR) return bucket;
+        int exponent = (bucket - LINEAR) / SUB_BUCKETS + FIRST_EXPONENT;
+        int sub = (bucket - LINEAR) % SUB_BUCKETS;
+        return (1L << exponent) + ((long) sub << (exponent - SUB_BITS));
+    }
+}